@@ -1,28 +1,138 @@
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinTask;
 
 import algorithm.Algorithm;
+import algorithm.BWTCompress;
+import algorithm.BaseModel;
+import algorithm.BasePacker;
+import algorithm.BitReader;
+import algorithm.BitWriter;
+import algorithm.CanonicalCode;
+import algorithm.ChannelOutput;
+import algorithm.FastqParser;
+import algorithm.Histogram;
 import algorithm.Huffman;
 import algorithm.LZW;
+import algorithm.NameCoder;
+import algorithm.ParallelCoder;
+import algorithm.QualityModel;
+import algorithm.RANS;
+import algorithm.RangeDecoder;
+import algorithm.RangeEncoder;
 import pojo.CompressResult;
-import pojo.HuffmanNode;
-
+import pojo.FastqBlock;
+import pojo.FastqRecord;
+
+// .mix 容器格式：
+// 文件头：魔数 "MIX" + 1 字节版本号
+// 之后是若干个相互独立的块，每个块为：行数（32 位）+ 块数据长度（32 位）+ 块数据
+// 行数为 0 的块表示文件结束
+// 块内每个 read 的各个字段分别写入 5 个数据流：名称、长度、碱基、质量值、碱基例外，
+// 块数据的开头是数据流表：每个数据流的编码方式（8 位）+ 字节数（32 位），之后依次是各个数据流的数据，
+// 所以每个数据流都可以单独跳过、单独解码，压缩和解压时各个数据流在线程池中并行处理
+//   名称 NAME_LZW：每条名称为 LZW 编码的字节数（24 位）+ 数据，块内使用同一个编码表
+//        NAME_TOKEN：区间编码数据，名称切分为 token 后与上一条名称比较，按相同、差值或字面值编码
+//        NAME_BWT：每条名称后加上 '\n' 拼接在一起，整体做一个 BWTCompress 块
+//   长度 LEN_RAW：每个 read 的碱基数（24 位）+ 质量值字符数（24 位）
+//        LEN_FIXED：所有 read 的长度都相同，只保存一次碱基数和质量值字符数
+//   碱基 BASE_2BIT：所有碱基拼接后的 2 bit 编码
+//        BASE_CM：上下文的阶数（8 位）+ 区间编码数据，碱基使用 k 阶上下文模型自适应编码
+//   质量值 QUALITY_HUFFMAN：哈夫曼码长表 + 所有质量值拼接后的编码
+//          QUALITY_RANS：所有质量值拼接后的 rANS 数据
+//          QUALITY_CM：字符表 + 区间编码数据，质量值使用上下文模型自适应编码
+//          QUALITY_BWT：所有质量值拼接后的 BWTCompress 块
+//   碱基例外 EXCEPTION_RLE：碱基流只能表示 ACGT，其他字符（N、IUPAC 简并碱基、小写等）在碱基流中按 A 编码，
+//            再在这里记录位置和字符，只记录含有其他字符的 read，每个 read 为：
+//            与上一个记录的 read 的序号差 - 1、连续相同字符的段数，每段为：与上一段结尾的距离、长度、字符（8 位），
+//            数字都使用变长整数（每字节 7 位，最高位为 1 表示还有后续字节）
+// 解压时先解码长度流，其他数据流按照其中的长度切分为每个 read 的字段
 public class MixCompress extends Algorithm {
 
+    private static final byte[] MAGIC = { 'M', 'I', 'X' };
+
+    private static final int VERSION = 8;
+
+    private static final int STREAM_NUM = 5; // 名称、长度、碱基、质量值、碱基例外
+
+    private static final int MAX_LEN = 0xffffff; // 长度流和 LZW 名称的字节数用 24 位表示
+
+    public static final int NAME_LZW = 0;
+
+    public static final int NAME_TOKEN = 1;
+
+    public static final int NAME_BWT = 2;
+
+    public static final int LEN_RAW = 0;
+
+    public static final int LEN_FIXED = 1;
+
+    public static final int QUALITY_HUFFMAN = 0;
+
+    public static final int QUALITY_RANS = 1;
+
+    public static final int QUALITY_CM = 2;
+
+    public static final int QUALITY_BWT = 3;
+
+    public static final int BASE_2BIT = 0;
+
+    public static final int BASE_CM = 1;
+
+    public static final int EXCEPTION_RLE = 0;
+
+    // 不是 ACGT 的字符记录到碱基例外流中
+    private static final boolean[] IS_ACGT = new boolean[256];
+
+    static {
+        IS_ACGT['A'] = IS_ACGT['T'] = IS_ACGT['G'] = IS_ACGT['C'] = true;
+    }
+
+    private int blockSize = 100000; // 每个块包含的 read 数
+
+    private int threadNum = Runtime.getRuntime().availableProcessors();
+
+    private int nameCodec = NAME_TOKEN; // 名称的编码方式
+
+    private int qualityCodec = QUALITY_CM; // 质量值的编码方式
+
+    private int baseCodec = BASE_2BIT; // 碱基的编码方式
+
+    private int baseOrder = 12; // 碱基上下文模型的阶数
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setThreadNum(int threadNum) {
+        this.threadNum = threadNum;
+    }
+
+    public void setNameCodec(int nameCodec) {
+        this.nameCodec = nameCodec;
+    }
+
+    public void setQualityCodec(int qualityCodec) {
+        this.qualityCodec = qualityCodec;
+    }
+
+    public void setBaseCodec(int baseCodec) {
+        this.baseCodec = baseCodec;
+    }
+
+    public void setBaseOrder(int baseOrder) {
+        this.baseOrder = baseOrder;
+    }
+
     public static String binToString(int b, int len) {
         String result = "";
         int a = b;
@@ -42,117 +152,282 @@ public class MixCompress extends Algorithm {
         return result;
     }
 
-    public void compress(String filepath) throws IOException {
+    // 写入 24 位的长度，超过 24 位时无法还原
+    private static void writeLen(CompressResult out, int v) throws IOException {
+        if (v < 0 || v > MAX_LEN)
+            throw new IOException("长度超过 24 位: " + v);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
 
-		// 获取压缩后的文件名
-		String compressFilename = "";
-		String[] t = filepath.split("\\.");
-		for (int i = 0; i < t.length - 1; i++) 
-			compressFilename += t[i];
-		compressFilename += ".mix";
+    // 名称流
+    private CompressResult compressNames(FastqBlock block) throws IOException {
+        int readNum = block.getReadNum();
+        byte[] bytes = block.getBytes();
+        FastqRecord record = new FastqRecord();
+        CompressResult out = new CompressResult(readNum * 32);
+
+        if (nameCodec == NAME_TOKEN) {
+            NameCoder coder = new NameCoder();
+            RangeEncoder encoder = new RangeEncoder(out);
+            for (int r = 0; r < readNum; r++) {
+                block.getRecord(r, record);
+                coder.encode(encoder, bytes, record.start(0), record.length(0));
+            }
+            encoder.flush();
+            return out;
+        }
+
+        if (nameCodec == NAME_BWT) {
+            CompressResult names = new CompressResult(readNum * 32);
+            for (int r = 0; r < readNum; r++) {
+                block.getRecord(r, record);
+                names.write(bytes, record.start(0), record.length(0));
+                names.write('\n');
+            }
+            BWTCompress.encode(names.getBytes(), 0, names.getByteLen(), BWTCompress.ENTROPY_RANS, out);
+            return out;
+        }
 
-        Huffman huffman = new Huffman();
         LZW lzw = new LZW();
 
-        File file = new File(filepath);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
+        // 每行的压缩结果重复使用同一个缓冲区
+        CompressResult data = new CompressResult();
+        for (int r = 0; r < readNum; r++) {
+            block.getRecord(r, record);
+            lzw.compressText(bytes, record.start(0), record.length(0), data);
+            // 字节数，用 24 位 bit 表示长度
+            writeLen(out, data.getByteLen());
+            out.write(data.getBytes(), 0, data.getByteLen());
+        }
+        return out;
+    }
 
-        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(compressFilename));
+    // 所有 read 的碱基数和质量值字符数是否都相同
+    private static boolean fixedLength(FastqBlock block) {
+        for (int r = 1; r < block.getReadNum(); r++) {
+            if (block.length(4 * r + 1) != block.length(1) || block.length(4 * r + 3) != block.length(3))
+                return false;
+        }
+        return true;
+    }
 
-        String line;
-        int lineCnt = 0;
+    // 长度流
+    private CompressResult compressLengths(FastqBlock block, int codec) throws IOException {
+        int readNum = codec == LEN_FIXED ? 1 : block.getReadNum();
+        CompressResult out = new CompressResult(readNum * 6);
+        for (int r = 0; r < readNum; r++) {
+            writeLen(out, block.length(4 * r + 1));
+            writeLen(out, block.length(4 * r + 3));
+        }
+        return out;
+    }
 
-        ArrayList<Byte> bytes = new ArrayList<>();
+    // 把块内所有 read 的第 line 行拼接在一起
+    private static CompressResult concat(FastqBlock block, int line) {
+        CompressResult out = new CompressResult(block.getBytes().length / 4);
+        for (int r = 0; r < block.getReadNum(); r++)
+            out.write(block.getBytes(), block.start(4 * r + line), block.length(4 * r + line));
+        return out;
+    }
 
-        reader.mark((int) file.length() + 1);
-        while ((line = reader.readLine()) != null) {
-            if (lineCnt % 4 == 3)
-                huffman.countText(line);
-            lineCnt++;
+    // 碱基流
+    private CompressResult compressBases(FastqBlock block) throws IOException {
+        int readNum = block.getReadNum();
+        byte[] bytes = block.getBytes();
+        CompressResult out = new CompressResult(readNum * 32);
+
+        if (baseCodec == BASE_CM) {
+            BaseModel model = new BaseModel(baseOrder);
+            out.write(baseOrder);
+            RangeEncoder encoder = new RangeEncoder(out);
+            for (int r = 0; r < readNum; r++)
+                model.encode(encoder, bytes, block.start(4 * r + 1), block.length(4 * r + 1));
+            encoder.flush();
+            return out;
         }
 
-        CompressResult data;
-        int buffer = 0;
-        int len = 0;
-        reader.reset();
-        huffman.buildTrie();
-        huffman.buildHuffmanCode();
+        // 所有碱基拼接后一起打包，read 之间不补齐
+        CompressResult seqs = concat(block, 1);
+        int packedLen = (seqs.getByteLen() + 3) / 4;
+        out.ensureCapacity(packedLen);
+        BasePacker.pack(seqs.getBytes(), 0, seqs.getByteLen(), out.getBytes(), 0);
+        out.setByteLen(packedLen);
+        return out;
+    }
 
-        // 将树序列化到 objBytes 中
-        ByteArrayOutputStream bo = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bo);
-        oos.writeObject(huffman.getTrie());
-        byte[] objBytes = bo.toByteArray();
-        int objByteLen = objBytes.length;
+    private static void writeVarint(CompressResult out, int v) {
+        while (v >= 0x80) {
+            out.write(v & 0x7f | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
 
-        // 写入行数，24 位表示
-        out.write(lineCnt >> 16);
-        out.write(lineCnt >> 8);
-        out.write(lineCnt);
+    // 碱基例外流，记录不是 ACGT 的字符
+    private static CompressResult compressExceptions(FastqBlock block) {
+        byte[] bytes = block.getBytes();
+        CompressResult out = new CompressResult(256);
+        int prevRead = -1;
+        for (int r = 0; r < block.getReadNum(); r++) {
+            int start = block.start(4 * r + 1);
+            int end = block.end(4 * r + 1);
+
+            // 先统计段数，没有其他字符的 read 不记录
+            int runNum = 0;
+            for (int j = start; j < end; j++) {
+                if (!IS_ACGT[bytes[j] & 0xff] && (j == start || bytes[j - 1] != bytes[j]))
+                    runNum++;
+            }
+            if (runNum == 0)
+                continue;
+
+            writeVarint(out, r - prevRead - 1);
+            writeVarint(out, runNum);
+            prevRead = r;
+
+            int prevEnd = start;
+            for (int j = start; j < end;) {
+                byte c = bytes[j];
+                if (IS_ACGT[c & 0xff]) {
+                    j++;
+                    continue;
+                }
+                int runStart = j;
+                while (j < end && bytes[j] == c)
+                    j++;
+                writeVarint(out, runStart - prevEnd);
+                writeVarint(out, j - runStart);
+                out.write(c);
+                prevEnd = j;
+            }
+        }
+        return out;
+    }
 
-        // 用 32 位来表示哈夫曼树的长度
-        for (int i = 3; i >= 0; i--) 
-            out.write((int) (objByteLen >> (8 * i)));
+    // 质量值流
+    private CompressResult compressQuals(FastqBlock block) throws IOException {
+        int readNum = block.getReadNum();
+        byte[] bytes = block.getBytes();
+        CompressResult out = new CompressResult(readNum * 64);
+
+        if (qualityCodec == QUALITY_RANS) {
+            // 整个块的质量值拼接在一起，使用同一个频率表做 rANS 编码
+            CompressResult quals = concat(block, 3);
+            RANS.encode(quals.getBytes(), 0, quals.getByteLen(), out);
+            return out;
+        }
 
-        // 将序列化的树写入文件
-        out.write(objBytes);
+        if (qualityCodec == QUALITY_BWT) {
+            CompressResult quals = concat(block, 3);
+            BWTCompress.encode(quals.getBytes(), 0, quals.getByteLen(), BWTCompress.ENTROPY_RANS, out);
+            return out;
+        }
 
-        lineCnt = 0;
-        while ((line = reader.readLine()) != null) {
+        long[] counts = new long[256];
+        for (int r = 0; r < readNum; r++)
+            Histogram.count(bytes, block.start(4 * r + 3), block.length(4 * r + 3), counts);
+
+        if (qualityCodec == QUALITY_CM) {
+            QualityModel model = QualityModel.build(counts);
+            model.write(out);
+            RangeEncoder encoder = new RangeEncoder(out);
+            for (int r = 0; r < readNum; r++)
+                model.encode(encoder, bytes, block.start(4 * r + 3), block.length(4 * r + 3));
+            encoder.flush();
+            return out;
+        }
 
-            // lzw
-            if (lineCnt % 4 == 0) {
-                bytes = lzw.compressText(line);
-                // 字节数，用 16 位 bit 表示长度
-                out.write(bytes.size() >> 16);
-                out.write(bytes.size() >> 8);
-                out.write(bytes.size() & 0xff);
-                for (byte b : bytes)
-                    out.write(b);
-            }
-            // bit
-            if (lineCnt % 4 == 1) {
-                // 字符数
-                out.write(line.length() >> 16);
-                out.write(line.length() >> 8);
-                out.write(line.length() & 0xff);
-                for (int j = 0; j < line.length(); j++) {
-                    buffer <<= 2;
-                    if (line.charAt(j) == 'T')
-                        buffer |= 1;
-                    if (line.charAt(j) == 'G')
-                        buffer |= 2;
-                    if (line.charAt(j) == 'C')
-                        buffer |= 3;
-                    len += 2;
-                    if (len == 8) {
-                        out.write(buffer);
-                        buffer = 0;
-                        len = 0;
-                    }
-                }
-                if (len != 0){
-                    out.write(buffer << (8 - len));
-                    buffer = 0;
-                    len = 0;
-                }
+        // 写入范式哈夫曼编码的码长表，块内没有质量值时码长表为空
+        Huffman huffman = new Huffman();
+        for (int r = 0; r < readNum; r++)
+            huffman.countBytes(bytes, block.start(4 * r + 3), block.length(4 * r + 3));
+        huffman.buildTrie();
+        if (huffman.getTrie() == null) {
+            new CanonicalCode(new int[256]).write(out);
+            return out;
+        }
+        huffman.buildHuffmanCode();
+        CanonicalCode canonicalCode = huffman.getCanonicalCode();
+        canonicalCode.write(out);
+
+        BitWriter writer = new BitWriter(out);
+        for (int r = 0; r < readNum; r++) {
+            for (int j = block.start(4 * r + 3); j < block.end(4 * r + 3); j++) {
+                int c = bytes[j] & 0xff;
+                writer.write(canonicalCode.getCode(c), canonicalCode.getLen(c));
             }
+        }
+        writer.flush();
+        return out;
+    }
 
-            // huffman
-            if (lineCnt % 4 == 3) {
-                data = huffman.compressText(line);
-                // bit 数
-                out.write(data.getBitLen() >> 16);
-                out.write(data.getBitLen() >> 8);
-                out.write(data.getBitLen() & 0xff);
-                for (byte b : data.getBytes()){
-                    out.write(b);
-                }
-            }
-            lineCnt++;
+    // 压缩一个块，块内的字段分别写入各个数据流
+    private CompressResult compressBlock(FastqBlock block) throws IOException {
+
+        int lenCodec = fixedLength(block) ? LEN_FIXED : LEN_RAW;
+        int[] codecs = { nameCodec, lenCodec, baseCodec, qualityCodec, EXCEPTION_RLE };
+
+        // 各个数据流互不依赖，在线程池中并行压缩
+        ForkJoinTask<CompressResult> names = ForkJoinTask.adapt(() -> compressNames(block)).fork();
+        ForkJoinTask<CompressResult> bases = ForkJoinTask.adapt(() -> compressBases(block)).fork();
+        ForkJoinTask<CompressResult> quals = ForkJoinTask.adapt(() -> compressQuals(block)).fork();
+        CompressResult lens = compressLengths(block, lenCodec);
+        CompressResult exceptions = compressExceptions(block);
+        CompressResult[] streams = { names.join(), lens, bases.join(), quals.join(), exceptions };
+
+        int size = 5 * STREAM_NUM;
+        for (CompressResult stream : streams)
+            size += stream.getByteLen();
+
+        // 数据流表，之后是各个数据流的数据
+        CompressResult out = new CompressResult(size);
+        for (int i = 0; i < STREAM_NUM; i++) {
+            out.write(codecs[i]);
+            ParallelCoder.writeInt(out, streams[i].getByteLen());
         }
+        for (CompressResult stream : streams)
+            out.write(stream.getBytes(), 0, stream.getByteLen());
+
+        return out;
+    }
+
+    public void compress(String filepath) throws IOException {
 
-        reader.close();
+		// 获取压缩后的文件名
+		String compressFilename = "";
+		String[] t = filepath.split("\\.");
+		for (int i = 0; i < t.length - 1; i++)
+			compressFilename += t[i];
+		compressFilename += ".mix";
+
+        FileInputStream in = new FileInputStream(filepath);
+        FastqParser parser = new FastqParser(in);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(compressFilename)));
+
+        out.write(MAGIC);
+        out.write(VERSION);
+
+        // 只读一遍文件，边读边提交块
+        Deque<Integer> lineNums = new ArrayDeque<>();
+        ParallelCoder.pipeline(threadNum, b -> {
+            FastqBlock block = parser.next(blockSize);
+            if (block == null)
+                return null;
+            lineNums.add(block.getLineNum());
+            return () -> compressBlock(block);
+        }, result -> {
+            out.writeInt(lineNums.poll());
+            out.writeInt(result.getByteLen());
+            out.write(result.getBytes(), 0, result.getByteLen());
+        });
+
+        // 结束块
+        out.writeInt(0);
+
+        in.close();
         out.close();
     }
 
@@ -165,152 +440,264 @@ public class MixCompress extends Algorithm {
 
 		if (new File(expendFilename + ".fastq").exists()) {
 			int c = 1;
-			while (new File(expendFilename + c + ".fastq").exists()) 
+			while (new File(expendFilename + c + ".fastq").exists())
 				c += 1;
 			expendFilename += c + ".fastq";
 		}
 		return expendFilename;
 	}
 
-    public static Object deserialize(byte[] bytes) {
-		Object object = null;
-		try {
-			ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-			ObjectInputStream ois = new ObjectInputStream(bis);
-			object = ois.readObject();
-			ois.close();
-			bis.close();
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		} catch (ClassNotFoundException ex) {
-			ex.printStackTrace();
-		}
-		return object;
-	}
+    // 读取 24 位的长度
+    private static int readLen(byte[] block, int index) {
+        return ((block[index] & 0xff) << 16) | ((block[index + 1] & 0xff) << 8) | (block[index + 2] & 0xff);
+    }
 
-    public void expend(String filepath) throws IOException{
+    // 解码所有名称，依次写入返回的缓冲区，第 r 条名称是 [nameOffs[r], nameOffs[r + 1])
+    private CompressResult expendNames(byte[] block, int off, int len, int codec, int[] nameOffs) throws IOException {
+        int readNum = nameOffs.length - 1;
+
+        if (codec == NAME_TOKEN) {
+            NameCoder coder = new NameCoder();
+            RangeDecoder decoder = new RangeDecoder(block, off, len);
+            CompressResult names = new CompressResult(readNum * 64);
+            for (int r = 0; r < readNum; r++)
+                nameOffs[r + 1] = nameOffs[r] + coder.decode(decoder, names);
+            return names;
+        }
+        if (codec == NAME_BWT) {
+            // 名称之间以 '\n' 分隔，去掉分隔符，名称向前移动
+            int textLen = BWTCompress.decodedLen(block, off);
+            CompressResult names = new CompressResult(textLen);
+            byte[] text = names.getBytes();
+            BWTCompress.decode(block, off, text, 0);
+            int w = 0;
+            int r = 0;
+            for (int i = 0; i < textLen; i++) {
+                if (text[i] != '\n') {
+                    text[w++] = text[i];
+                    continue;
+                }
+                if (r == readNum)
+                    throw new IOException("名称数量错误");
+                nameOffs[++r] = w;
+            }
+            if (r != readNum)
+                throw new IOException("名称数量错误");
+            names.setByteLen(w);
+            return names;
+        }
+        if (codec != NAME_LZW)
+            throw new IOException("不支持的名称编码方式: " + codec);
+
+        LZW lzw = new LZW();
+        CompressResult names = new CompressResult(readNum * 64);
+        int index = off;
+        for (int r = 0; r < readNum; r++) {
+            int dataLen = readLen(block, index);
+            index += 3;
+            nameOffs[r + 1] = nameOffs[r] + lzw.expendBytes(block, index, dataLen, names);
+            index += dataLen;
+        }
+        return names;
+    }
 
-        FileInputStream is = new FileInputStream(filepath);
-		BufferedInputStream in = new BufferedInputStream(is);
-		BufferedWriter out = new BufferedWriter(
-				new OutputStreamWriter(new FileOutputStream(getExpendFilename(filepath))));
+    private void expendLengths(byte[] block, int off, int codec, int[] seqLens, int[] qualLens) throws IOException {
+        if (codec != LEN_RAW && codec != LEN_FIXED)
+            throw new IOException("不支持的长度编码方式: " + codec);
 
-        // 读取行数
-		ByteBuffer byteBuffer;
-		byte[] lineNumBytes = new byte[3];
-		in.read(lineNumBytes);
-		int lineNum = 0;
+        for (int r = 0; r < seqLens.length; r++) {
+            int index = codec == LEN_FIXED ? off : off + 6 * r;
+            seqLens[r] = readLen(block, index);
+            qualLens[r] = readLen(block, index + 3);
+        }
+    }
 
-        for (int i = 0; i < 6; i++) {
-            lineNum <<= 4;
-            lineNum |= (lineNumBytes[i / 2] >> 4 * (i % 2 == 0 ? 1 : 0)) & 0xf;
+    private static int sum(int[] lens) {
+        int sum = 0;
+        for (int len : lens)
+            sum += len;
+        return sum;
+    }
+
+    // 解码所有 read 的碱基，拼接在一起
+    private byte[] expendBases(byte[] block, int off, int len, int codec, int[] seqLens) throws IOException {
+        byte[] bases = new byte[sum(seqLens)];
+
+        if (codec == BASE_CM) {
+            BaseModel model = new BaseModel(block[off] & 0xff);
+            RangeDecoder decoder = new RangeDecoder(block, off + 1, len - 1);
+            int index = 0;
+            for (int seqLen : seqLens) {
+                model.decode(decoder, bases, index, seqLen);
+                index += seqLen;
+            }
+            return bases;
         }
-        
-        // 读取树对象的长度
-		byte[] objLenNum = new byte[4];
-		in.read(objLenNum);
-		byteBuffer = ByteBuffer.wrap(objLenNum, 0, 4);
-		int objLen = byteBuffer.getInt();
+        if (codec != BASE_2BIT)
+            throw new IOException("不支持的碱基编码方式: " + codec);
 
-		// 读取树
-		byte[] objBytes = new byte[objLen];
-		in.read(objBytes);
-		HuffmanNode root = (HuffmanNode) deserialize(objBytes);
+        if ((bases.length + 3) / 4 > len)
+            throw new IOException("碱基数据长度错误");
+        BasePacker.unpack(block, off, bases, 0, bases.length);
+        return bases;
+    }
 
-        byte[] bytes = new byte[1024 * 1024];
+    private static int readVarint(byte[] block, int[] index) {
+        int v = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = block[index[0]++] & 0xff;
+            v |= (b & 0x7f) << shift;
+            if (b < 0x80)
+                return v;
+        }
+    }
 
-        int dataLen = 0;
-        int dataLenByteNum = 0;
-        byte[] lineBuffer = new byte[65536];
-        int index = 0;
+    // 把碱基例外流中记录的字符写回到拼接后的碱基中
+    private void expendExceptions(byte[] block, int off, int len, int codec, int[] seqLens, byte[] bases)
+            throws IOException {
+        if (codec != EXCEPTION_RLE)
+            throw new IOException("不支持的碱基例外编码方式: " + codec);
+
+        // 每个 read 的碱基在 bases 中的起始位置
+        int[] starts = new int[seqLens.length + 1];
+        for (int r = 0; r < seqLens.length; r++)
+            starts[r + 1] = starts[r] + seqLens[r];
+
+        int[] index = { off };
+        int r = -1;
+        while (index[0] < off + len) {
+            r += readVarint(block, index) + 1;
+            int runNum = readVarint(block, index);
+            int pos = 0;
+            for (int k = 0; k < runNum; k++) {
+                pos += readVarint(block, index);
+                int runLen = readVarint(block, index);
+                byte c = block[index[0]++];
+                if (r >= seqLens.length || pos + runLen > seqLens[r])
+                    throw new IOException("碱基例外数据错误");
+                Arrays.fill(bases, starts[r] + pos, starts[r] + pos + runLen, c);
+                pos += runLen;
+            }
+        }
+    }
 
-        int lineCnt = 0;
+    // 解码所有 read 的质量值，拼接在一起
+    private byte[] expendQuals(byte[] block, int off, int len, int codec, int[] qualLens) throws IOException {
+        byte[] quals = new byte[sum(qualLens)];
+
+        if (codec == QUALITY_RANS) {
+            if (RANS.decodedLen(block, off) != quals.length)
+                throw new IOException("质量值长度错误");
+            RANS.decode(block, off, quals, 0);
+        } else if (codec == QUALITY_BWT) {
+            if (BWTCompress.decodedLen(block, off) != quals.length)
+                throw new IOException("质量值长度错误");
+            BWTCompress.decode(block, off, quals, 0);
+        } else if (codec == QUALITY_CM) {
+            QualityModel model = QualityModel.read(block, off);
+            RangeDecoder decoder = new RangeDecoder(block, off + model.byteSize(), len - model.byteSize());
+            int index = 0;
+            for (int qualLen : qualLens) {
+                model.decode(decoder, quals, index, qualLen);
+                index += qualLen;
+            }
+        } else if (codec == QUALITY_HUFFMAN) {
+            // 读取码长表，重建范式哈夫曼编码
+            CanonicalCode canonicalCode = CanonicalCode.read(block, off);
+            int dataLen = len - canonicalCode.byteSize();
+            BitReader in = new BitReader(block, off + canonicalCode.byteSize(), dataLen);
+            if (canonicalCode.decode(in, 8L * dataLen, quals, 0, quals.length) != quals.length)
+                throw new IOException("质量值长度错误");
+        } else {
+            throw new IOException("不支持的质量值编码方式: " + codec);
+        }
+        return quals;
+    }
 
-        Huffman huffman = new Huffman();
-        LZW lzw = new LZW();
+    // 解压一个块，返回还原后的文本
+    private CompressResult expendBlock(byte[] block, int lineNum) throws IOException {
+
+        int readNum = (lineNum + 3) / 4;
+
+        // 读取数据流表
+        int[] codecs = new int[STREAM_NUM];
+        int[] offs = new int[STREAM_NUM];
+        int[] lens = new int[STREAM_NUM];
+        int index = 5 * STREAM_NUM;
+        for (int i = 0; i < STREAM_NUM; i++) {
+            codecs[i] = block[5 * i] & 0xff;
+            lens[i] = ParallelCoder.readInt(block, 5 * i + 1);
+            offs[i] = index;
+            index += lens[i];
+        }
+        if (index != block.length)
+            throw new IOException("mix 数据流表错误");
+
+        // 先解码长度流，其他数据流按照长度切分，互不依赖，在线程池中并行解码
+        int[] seqLens = new int[readNum];
+        int[] qualLens = new int[readNum];
+        expendLengths(block, offs[1], codecs[1], seqLens, qualLens);
+
+        int[] nameOffs = new int[readNum + 1];
+        ForkJoinTask<CompressResult> nameTask = ForkJoinTask
+                .adapt(() -> expendNames(block, offs[0], lens[0], codecs[0], nameOffs)).fork();
+        ForkJoinTask<byte[]> baseTask = ForkJoinTask
+                .adapt(() -> expendBases(block, offs[2], lens[2], codecs[2], seqLens)).fork();
+        byte[] quals = expendQuals(block, offs[3], lens[3], codecs[3], qualLens);
+        byte[] bases = baseTask.join();
+        expendExceptions(block, offs[4], lens[4], codecs[4], seqLens, bases);
+        byte[] names = nameTask.join().getBytes();
+
+        // 按 read 的顺序拼接各个字段
+        CompressResult out = new CompressResult(bases.length + quals.length + readNum * 64);
+        int seqIndex = 0;
+        int qualIndex = 0;
+        for (int lineCnt = 0; lineCnt < lineNum; lineCnt++) {
+            int r = lineCnt / 4;
+            if (lineCnt % 4 == 0) {
+                out.write(names, nameOffs[r], nameOffs[r + 1] - nameOffs[r]);
+            }
+            if (lineCnt % 4 == 1) {
+                out.write(bases, seqIndex, seqLens[r]);
+                seqIndex += seqLens[r];
+            }
+            if (lineCnt % 4 == 2) {
+                out.write('+');
+            }
+            if (lineCnt % 4 == 3) {
+                out.write(quals, qualIndex, qualLens[r]);
+                qualIndex += qualLens[r];
+            }
+            out.write('\n');
+        }
 
-        StringBuilder dnaStr = new StringBuilder();
-        int huffmanByteNum = 0;
-
-        out: while (true) {
-			in.read(bytes);
-			for (int i = 0; i < bytes.length; i++) {
-                if (dataLenByteNum < 3){
-                    for (int j = 1; j >= 0; j--) {
-                        dataLen <<= 4;
-                        dataLen |= (bytes[i] >> 4 * j) & 0xf;
-                    }
-                    dataLenByteNum ++;
-
-                } else {
-                    if (lineCnt % 4 == 0){
-                        // lzw
-                        lineBuffer[index] = bytes[i];
-                        index ++;
-                        if (index == dataLen){
-                            out.write(lzw.expendBytes(lineBuffer, dataLen) + "\n");
-                            lineCnt ++;
-                            dataLen = 0;
-                            dataLenByteNum = 0;
-                            index = 0;
-                            continue;
-                        }
-                    }
-                    if (lineCnt % 4 == 1){
-                        // bit
-                        for (int j = 3; j >= 0; j--) {
-                            if ((bytes[i] >> (2 * j) & 3) == 0)
-                                dnaStr.append("A");
-                            if ((bytes[i] >> (2 * j) & 3) == 1)
-                                dnaStr.append("T");
-                            if ((bytes[i] >> (2 * j) & 3) == 2)
-                                dnaStr.append("G");
-                            if ((bytes[i] >> (2 * j) & 3) == 3)
-                                dnaStr.append("C");
-                            if (dnaStr.length() == dataLen)
-                                break;
-                        }
-                        if (dnaStr.length() == dataLen){
-
-                            out.write(dnaStr.toString() + "\n");
-                            lineCnt ++;
-                            // +
-                            out.write("+\n");
-                            lineCnt ++;
-
-                            dnaStr = new StringBuilder();
-                            dataLen = 0;
-                            dataLenByteNum = 0;
-                            continue;
-                        }
-                    }
-                    if (lineCnt % 4 == 3){
-                        // huffman
-                        lineBuffer[index] = bytes[i];
-                        index ++;
-                        if (index == 1){
-                            huffmanByteNum = dataLen / 8;
-                            if (huffmanByteNum < dataLen * 1.0 / 8)
-                            huffmanByteNum ++;
-                        }
-
-                        if (index == huffmanByteNum){
-                            out.write(huffman.expendBytes(root, lineBuffer, dataLen));
-                            if (lineCnt != lineNum - 1)
-                                out.write("\n");
-                            lineCnt ++;
-                            dataLen = 0;
-                            dataLenByteNum = 0;
-                            index = 0;
-                        }
-                    }
-                    
-                    if (lineCnt == lineNum)
-                        break out;
-                }
+        return out;
+    }
 
-			}
-		}
+    public void expend(String filepath) throws IOException{
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+        ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
+
+        // 检查魔数和版本号
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        int version = in.read();
+        if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+            in.close();
+            out.close();
+            throw new IOException("不支持的 mix 文件格式: " + filepath);
+        }
+
+        // 与压缩相同，块按顺序读入，并行解压，按顺序写出
+        ParallelCoder.pipeline(threadNum, b -> {
+            int lineNum = in.readInt();
+            if (lineNum == 0)
+                return null;
+            byte[] block = new byte[in.readInt()];
+            in.readFully(block);
+            return () -> expendBlock(block, lineNum);
+        }, text -> out.write(text.getBytes(), 0, text.getByteLen()));
 
         in.close();
         out.close();
@@ -1,113 +1,96 @@
 package algorithm;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 
 // https://zh.wikipedia.org/wiki/Burrows-Wheeler%E5%8F%98%E6%8D%A2
 public class BWT {
 
-	public String enCode(String str) {
+	private static final byte[] MAGIC = { 'B', 'W', 'T' };
+
+	private static final int VERSION = 1;
+
+	private int threadNum = Runtime.getRuntime().availableProcessors();
 
-		int len = str.length();
-		char[] charArray = str.toCharArray();
-
-		char[] last = new char[len];
-		List<Integer> index = new ArrayList<>();
-
-		// 循环字符串矩阵最后一列从上到下是将 原字符串逆序后加上分隔符
-		for (int i = 0; i < len - 1; i++)
-			last[i] = charArray[len - i - 2];
-		last[len - 1] = charArray[len - 1];
-
-		for (int i = 0; i < len; i++)
-			index.add(i);
-
-		// 对循环字符串矩阵的每一行进行字典序排序（若某一列相等，则比较下一列），
-		// 因为排序完成后只需要矩阵的最后一列，
-		// 所以可以按照字符数组，对其序号排序，
-		// 排完序后，index[i] 就是最后一列中第 i 个元素的位置
-		Collections.sort(
-				index,	
-				(i1, i2) -> {
-					// i1 和 i2 是 原字符串 的序号
-					// 要经过转换变成循环字符串矩阵 第一列 的序号
-					// 第一列 是 原字符串的逆序
-					int index1 = len - i1 - 1;
-					int index2 = len - i2 - 1;
-					// 当前的两个字符相等，就比较下一个字符
-					while (charArray[index1] == charArray[index2]) {
-						index1++;
-						index2++;
-						if (index1 == len)
-							index1 = 0;
-						if (index2 == len)
-							index2 = 0;
-					}
-					return charArray[index1] - charArray[index2];
-				});
-
-		StringBuilder sb = new StringBuilder();
-		for (int i = 0; i < len; i++)
-			sb.append(last[index.get(i)]);
-
-		return sb.toString();
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
 	}
 
-	public String deCode(String str) {
-		// bwt 在还原变换时要重建循环字符串矩阵
-		// 首先将变换后的字符串按照顺序从上到下放到最后一列
-		// 然后插入到第一列，对矩阵进行每一行进行排序（不包括最后一列），
-		// 然后再次将最后一列插入到第一列，重复以上步骤，直到矩阵填满
-
-		int len = str.length();
-		char[] lastCol = str.toCharArray();
-		List<Integer> sortIndex = new ArrayList<>();
-
-		for (int i = 0; i < len; i++)
-			sortIndex.add(i);
-
-		// 在最前面加上最后一列后，就需要进行行排序，若遇到某两行的同一列相等，
-		// 就需要比较后一列，因为后面一列元素在上一轮操作中已经排好序，且使用的排序算法是稳定排序，
-		// 所以不需要继续向后面比较，两者的顺序不需要变换就是正确的。所以在进行行排序时
-		// 只需对最后一列排序一次，记录下交换的位置即可，之后每一次按照固定的顺序交换即可
-		Collections.sort(sortIndex, (i1, i2) -> lastCol[i1] - lastCol[i2]);
-
-		// 还原完矩阵后，若某一行最后一个的元素为分隔符时，此行就是解压后的字符串
-		// 所以要找到对应的行数，之后只需要得到这一行的数据就可以了，不需要其他行的数据
-		int index = 0;
-		for (int j = 0; j < lastCol.length; j++) {
-			if (lastCol[j] == '\0')
-				index = j;
-		}
+	// 对 src[off, off + len) 做 BWT，结果写入 dst[dstOff] 开始的 len + 1 个字节
+	// 原字符串的末尾有一个比所有字节都小的结束符，所以循环字符串矩阵按行排序就是按后缀排序，
+	// 后缀数组用 SA-IS 在线性时间内构造，最后一列就是每个后缀的前一个字节，
+	// 结束符在最后一列中的位置（主索引）写入 0 并返回
+	public static int transform(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		int[] sa = SuffixArray.build(src, off, len);
 
-		// 对最后一列按照排序后得到的正确位置进行 len - 1 第变换
-		// 第 i 次变换可以得到第 i 列的原矩阵数据
-		// 在两个数组中来回变换，每次得到的新的一列的第 index 行就是变换前的数据
-		StringBuilder sb = new StringBuilder();
-		char[] newCol1 = new char[len];
-		char[] newCol2 = lastCol.clone();
-
-		for (int i = 0; i < len - 1; i++) {
-			if (i % 2 == 0) {
-				for (int j = 0; j < len; j++)
-					newCol1[j] = newCol2[sortIndex.get(j)];
-				sb.append(newCol1[index]);
+		int primary = 0;
+		for (int i = 0; i <= len; i++) {
+			int pos = sa[i];
+			if (pos == 0) {
+				primary = i;
+				dst[dstOff + i] = 0;
 			} else {
-				for (int j = 0; j < len; j++)
-					newCol2[j] = newCol1[sortIndex.get(j)];
-				sb.append(newCol2[index]);
+				dst[dstOff + i] = src[off + pos - 1];
 			}
 		}
+		return primary;
+	}
 
-		return sb.toString();
+	// str 的最后一个字符是分隔符 '\0'，其他字符都在 1 ~ 255 之间
+	public String enCode(String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.ISO_8859_1);
+		byte[] last = new byte[bytes.length];
+		transform(bytes, 0, bytes.length - 1, last, 0);
+		return new String(last, StandardCharsets.ISO_8859_1);
+	}
+
+	// 由 BWT 的结果 src[off, off + len + 1) 和主索引还原原字符串，写入 dst[dstOff] 开始的 len 个字节
+	// 计数排序得到第一列：字符 c 在第一列中从 C[c] 开始（第 0 行是结束符），
+	// LF 映射：最后一列第 i 行的字符是第 k 次出现的 c 时，它在第一列中是第 C[c] + k 行，
+	// 第 0 行以结束符开头，它的最后一个字符就是原字符串的最后一个字符，
+	// 从第 0 行开始反复做 LF 映射，一次线性扫描就从后向前得到整个原字符串
+	public static void inverse(byte[] src, int off, int len, int primary, byte[] dst, int dstOff) {
+		int n = len + 1;
+
+		int[] start = new int[256];
+		for (int i = 0; i < n; i++)
+			if (i != primary)
+				start[src[off + i] & 0xff]++;
+		int sum = 1;
+		for (int c = 0; c < 256; c++) {
+			int cnt = start[c];
+			start[c] = sum;
+			sum += cnt;
+		}
+
+		int[] lf = new int[n];
+		for (int i = 0; i < n; i++)
+			if (i != primary)
+				lf[i] = start[src[off + i] & 0xff]++;
+
+		int row = 0;
+		for (int k = len - 1; k >= 0; k--) {
+			dst[dstOff + k] = src[off + row];
+			row = lf[row];
+		}
+	}
+
+	// 没有记录主索引时，分隔符 '\0' 所在的位置就是主索引，原字符串中不能有 '\0'
+	private static int primaryIndex(byte[] bytes) {
+		int primary = 0;
+		for (int i = 0; i < bytes.length; i++)
+			if (bytes[i] == 0)
+				primary = i;
+		return primary;
+	}
+
+	public String deCode(String str) {
+		byte[] bytes = str.getBytes(StandardCharsets.ISO_8859_1);
+		byte[] text = new byte[bytes.length - 1];
+		inverse(bytes, 0, text.length, primaryIndex(bytes), text, 0);
+		return new String(text, StandardCharsets.ISO_8859_1);
 	}
 
 	private String bwtFilename(String filepath) {
@@ -134,42 +117,141 @@ public class BWT {
 		return filename;
 	}
 
+	// 逐块编码 bytes，返回最后一列，主索引写入 primaries[block]
+	private static byte[] transformBlock(byte[] bytes, int[] primaries, int block) {
+		byte[] last = new byte[bytes.length + 1];
+		primaries[block] = transform(bytes, 0, bytes.length, last, 0);
+		return last;
+	}
+
+	private static byte[] inverseBlock(MappedInput in, long pos, int len, int primary) throws IOException {
+		byte[] last = new byte[len + 1];
+		in.read(pos, last, 0, len + 1);
+		if (primary > len || last[primary] != 0)
+			throw new IOException("bwt 块表错误");
+		byte[] text = new byte[len];
+		inverse(last, 0, len, primary, text, 0);
+		return text;
+	}
+
+	// 输入按 len 字节分块，各块在线程池中并行变换，按顺序写出
+	// .bwt 文件：魔数 "BWT" + 1 字节版本号 + 每块的最后一列（块长度 + 1 个字节，主索引处为 0），
+	// 之后是块表：每块的长度（32 位）+ 主索引（32 位），最后是块数（32 位）
+	// 逆变换先从文件末尾读取块表，得到每块的位置和主索引，不需要知道编码时的块大小，各块同样并行还原
+	// 没有魔数的文件是之前的格式：每块都是 len + 1 个字节（最后一块可以较短），主索引是块中的 0，
+	// 逆变换时 len 必须与编码时相同
 	public void bwt(String filepath, String type, int len) throws IOException {
+		if (type.equals("bwt"))
+			transformFile(filepath, len);
+		else
+			inverseFile(filepath, len);
+	}
 
-		String filename;
-		if (type.equals("bwt")) {
-			filename = bwtFilename(filepath);
-		} else {
-			filename = ibwtFilename(filepath);
-			len++;
-		}
+	private void transformFile(String filepath, int len) throws IOException {
+		MappedInput in = new MappedInput(filepath);
+		DataOutputStream out = new DataOutputStream(new ChannelOutput(bwtFilename(filepath)));
 
-		InputStream is = new FileInputStream(filepath);
-		BufferedInputStream in = new BufferedInputStream(is);
+		out.write(MAGIC);
+		out.write(VERSION);
 
-		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(filename));
+		int blockNum = (int) ((in.size() + len - 1) / len);
+		int[] primaries = new int[blockNum];
 
-		byte[] bytes = new byte[len];
-		long byteNum = is.available();
+		ParallelCoder.pipeline(threadNum, block -> {
+			if (block == blockNum)
+				return null;
+			long pos = (long) block * len;
+			byte[] bytes = new byte[(int) Math.min(len, in.size() - pos)];
+			in.read(pos, bytes, 0, bytes.length);
+			return () -> transformBlock(bytes, primaries, block);
+		}, out::write);
 
-		while (byteNum > 0) {
+		// 块表
+		for (int block = 0; block < blockNum; block++) {
+			out.writeInt((int) Math.min(len, in.size() - (long) block * len));
+			out.writeInt(primaries[block]);
+		}
+		out.writeInt(blockNum);
 
-			if (byteNum >= len) {
-				in.read(bytes);
-			} else {
-				bytes = new byte[(int) byteNum];
-				in.read(bytes);
-			}
+		in.close();
+		out.close();
+	}
+
+	// 文件是否以魔数和版本号开头
+	private static boolean hasHeader(MappedInput in) {
+		if (in.size() < MAGIC.length + 1)
+			return false;
+		for (int i = 0; i < MAGIC.length; i++)
+			if (in.get(i) != MAGIC[i])
+				return false;
+		return in.get(MAGIC.length) == VERSION;
+	}
+
+	private void inverseFile(String filepath, int len) throws IOException {
+		MappedInput in = new MappedInput(filepath);
+		if (!hasHeader(in)) {
+			inverseLegacy(in, filepath, len);
+			return;
+		}
 
-			if (type.equals("bwt"))
-				out.write(enCode(new String(bytes) + "\0").getBytes());
-			else
-				out.write(deCode(new String(bytes)).getBytes());
-			// System.out.println(byteNum);
-			byteNum -= len;
+		// 读取块表
+		long dataStart = MAGIC.length + 1;
+		byte[] t = new byte[4];
+		in.read(in.size() - 4, t, 0, 4);
+		int blockNum = ParallelCoder.readInt(t, 0);
+		long tableStart = in.size() - 4 - 8L * blockNum;
+		if (blockNum < 0 || tableStart < dataStart) {
+			in.close();
+			throw new IOException("不支持的 bwt 文件格式: " + filepath);
+		}
+		byte[] table = new byte[8 * blockNum];
+		in.read(tableStart, table, 0, table.length);
 
+		// 每块的起始位置，块长度错误时之后的位置保持为 0，不会与块表的位置相同
+		long[] starts = new long[blockNum + 1];
+		starts[0] = dataStart;
+		for (int block = 0; block < blockNum; block++) {
+			int blockLen = ParallelCoder.readInt(table, 8 * block);
+			if (blockLen < 0)
+				break;
+			starts[block + 1] = starts[block] + blockLen + 1;
+		}
+		if (starts[blockNum] != tableStart) {
+			in.close();
+			throw new IOException("bwt 块表错误");
 		}
 
+		ChannelOutput out = new ChannelOutput(ibwtFilename(filepath));
+
+		ParallelCoder.pipeline(threadNum, block -> {
+			if (block == blockNum)
+				return null;
+			int blockLen = ParallelCoder.readInt(table, 8 * block);
+			int primary = ParallelCoder.readInt(table, 8 * block + 4);
+			return () -> inverseBlock(in, starts[block], blockLen, primary);
+		}, out::write);
+
+		in.close();
+		out.close();
+	}
+
+	// 之前的格式，没有块表，主索引是块中最后一个 0
+	private void inverseLegacy(MappedInput in, String filepath, int len) throws IOException {
+		ChannelOutput out = new ChannelOutput(ibwtFilename(filepath));
+
+		ParallelCoder.pipeline(threadNum, block -> {
+			long pos = (long) block * (len + 1);
+			if (pos >= in.size())
+				return null;
+			byte[] bytes = new byte[(int) Math.min(len + 1, in.size() - pos)];
+			in.read(pos, bytes, 0, bytes.length);
+			return () -> {
+				byte[] text = new byte[bytes.length - 1];
+				inverse(bytes, 0, text.length, primaryIndex(bytes), text, 0);
+				return text;
+			};
+		}, out::write);
+
 		in.close();
 		out.close();
 	}
@@ -0,0 +1,336 @@
+package algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import pojo.CompressResult;
+
+// 与 bzip2 相同的块排序压缩：BWT -> MTF -> 0 的游程编码 -> 熵编码
+// BWT 把上下文相同的字节排在一起，最后一列中相同的字节大多连续出现，
+// MTF（move-to-front）把每个字节替换为它在最近使用的字节表中的序号，连续相同的字节都变为 0，
+// 连续的 0 用 RUNA、RUNB 两个符号按双射二进制记录长度（RUNA 为 1，RUNB 为 2，第 k 位的权重为 2^k），
+// 其他序号 v 写为 v + 1，v 不小于 254 时写为 255 和 v - 254，
+// 最后用 rANS 或哈夫曼编码，名称和质量值这样局部重复很多的数据效果最好
+//
+// 块格式：原始字节数（32 位）+ 主索引（32 位）+ 熵编码方式（8 位）+ 游程编码后的字节数（32 位）+ 熵编码数据
+//   ENTROPY_RANS：rANS 块数据
+//   ENTROPY_HUFFMAN：哈夫曼码长表 + 编码数据的字节数（32 位）+ 编码数据
+//
+// .bwtz 文件：若干个块，每块为块字节数（32 位）+ 块数据，块字节数为 0 表示结束
+public class BWTCompress extends Algorithm {
+
+	public static final int ENTROPY_RANS = 0;
+
+	public static final int ENTROPY_HUFFMAN = 1;
+
+	private static final int RUNA = 0;
+
+	private static final int RUNB = 1;
+
+	private static final int ESCAPE = 255;
+
+	// 单独压缩文件时默认每块的字节数
+	public static final int BLOCK_SIZE = 900 * 1024;
+
+	private int blockSize = BLOCK_SIZE;
+
+	private int entropy = ENTROPY_RANS;
+
+	private int threadNum = Runtime.getRuntime().availableProcessors();
+
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
+
+	public void setEntropy(int entropy) {
+		this.entropy = entropy;
+	}
+
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
+	}
+
+	// 写入长度为 run 的连续的 0
+	private static void writeRun(CompressResult out, int run) {
+		run--;
+		while (true) {
+			out.write((run & 1) == 0 ? RUNA : RUNB);
+			if (run < 2)
+				break;
+			run = (run - 2) >>> 1;
+		}
+	}
+
+	// 对 BWT 的最后一列（跳过主索引所在的结束符）做 MTF 和 0 的游程编码
+	private static CompressResult mtfEncode(byte[] last, int primary) {
+		CompressResult out = new CompressResult(last.length / 2 + 16);
+		byte[] order = new byte[256];
+		for (int i = 0; i < 256; i++)
+			order[i] = (byte) i;
+
+		int run = 0;
+		for (int i = 0; i < last.length; i++) {
+			if (i == primary)
+				continue;
+
+			byte c = last[i];
+			if (order[0] == c) {
+				run++;
+				continue;
+			}
+			if (run > 0) {
+				writeRun(out, run);
+				run = 0;
+			}
+
+			// 找到 c 的序号，前面的字节依次后移
+			int v = 1;
+			byte prev = order[0];
+			while (order[v] != c) {
+				byte t = order[v];
+				order[v] = prev;
+				prev = t;
+				v++;
+			}
+			order[v] = prev;
+			order[0] = c;
+
+			if (v < ESCAPE - 1) {
+				out.write(v + 1);
+			} else {
+				out.write(ESCAPE);
+				out.write(v - (ESCAPE - 1));
+			}
+		}
+		if (run > 0)
+			writeRun(out, run);
+		return out;
+	}
+
+	// mtfEncode 的逆过程，还原 BWT 的最后一列，主索引的位置空出
+	private static void mtfDecode(byte[] src, int len, byte[] last, int primary) throws IOException {
+		byte[] order = new byte[256];
+		for (int i = 0; i < 256; i++)
+			order[i] = (byte) i;
+
+		int pos = 0;
+		int run = 0;
+		int weight = 1;
+		for (int i = 0; i <= len; i++) {
+			int b = i < len ? src[i] & 0xff : ESCAPE;
+			if (i < len && (b == RUNA || b == RUNB)) {
+				run += b == RUNA ? weight : 2 * weight;
+				weight <<= 1;
+				if (run > last.length)
+					throw new IOException("BWT 数据错误");
+				continue;
+			}
+
+			// 游程结束，写入 run 个当前表头的字节
+			for (; run > 0; run--) {
+				if (pos == primary)
+					pos++;
+				if (pos >= last.length)
+					throw new IOException("BWT 数据错误");
+				last[pos++] = order[0];
+			}
+			weight = 1;
+			if (i == len)
+				break;
+
+			int v = b - 1;
+			if (b == ESCAPE) {
+				if (++i == len)
+					throw new IOException("BWT 数据错误");
+				v = (ESCAPE - 1) + (src[i] & 0xff);
+				if (v > 255)
+					throw new IOException("BWT 数据错误");
+			}
+			byte c = order[v];
+			System.arraycopy(order, 0, order, 1, v);
+			order[0] = c;
+
+			if (pos == primary)
+				pos++;
+			if (pos >= last.length)
+				throw new IOException("BWT 数据错误");
+			last[pos++] = c;
+		}
+
+		if (pos == primary)
+			pos++;
+		if (pos != last.length)
+			throw new IOException("BWT 数据错误");
+	}
+
+	// 编码 src 中 [off, off + len) 的字节，块数据追加到 out 的末尾
+	public static void encode(byte[] src, int off, int len, int entropy, CompressResult out) throws IOException {
+		byte[] last = new byte[len + 1];
+		int primary = BWT.transform(src, off, len, last, 0);
+		CompressResult mtf = mtfEncode(last, primary);
+
+		ParallelCoder.writeInt(out, len);
+		ParallelCoder.writeInt(out, primary);
+		out.write(entropy);
+		ParallelCoder.writeInt(out, mtf.getByteLen());
+
+		if (entropy == ENTROPY_RANS) {
+			RANS.encode(mtf.getBytes(), 0, mtf.getByteLen(), out);
+			return;
+		}
+		if (entropy != ENTROPY_HUFFMAN)
+			throw new IOException("不支持的熵编码方式: " + entropy);
+
+		// 写入范式哈夫曼编码的码长表，没有数据时码长表为空
+		Huffman huffman = new Huffman();
+		huffman.countBytes(mtf.getBytes(), 0, mtf.getByteLen());
+		huffman.buildTrie();
+		if (huffman.getTrie() == null) {
+			new CanonicalCode(new int[256]).write(out);
+			ParallelCoder.writeInt(out, 0);
+			return;
+		}
+		huffman.buildHuffmanCode();
+		CanonicalCode canonicalCode = huffman.getCanonicalCode();
+		canonicalCode.write(out);
+
+		CompressResult data = new CompressResult(mtf.getByteLen());
+		BitWriter writer = new BitWriter(data);
+		byte[] bytes = mtf.getBytes();
+		for (int i = 0; i < mtf.getByteLen(); i++) {
+			int c = bytes[i] & 0xff;
+			writer.write(canonicalCode.getCode(c), canonicalCode.getLen(c));
+		}
+		writer.flush();
+		ParallelCoder.writeInt(out, data.getByteLen());
+		out.write(data.getBytes(), 0, data.getByteLen());
+	}
+
+	// 读取块的原始字节数
+	public static int decodedLen(byte[] src, int off) {
+		return ParallelCoder.readInt(src, off);
+	}
+
+	// 解码从 src[off] 开始的块，写入 dst[dstOff] 开始的位置，返回块结束的位置
+	public static int decode(byte[] src, int off, byte[] dst, int dstOff) throws IOException {
+		int len = ParallelCoder.readInt(src, off);
+		int primary = ParallelCoder.readInt(src, off + 4);
+		int entropy = src[off + 8] & 0xff;
+		int mtfLen = ParallelCoder.readInt(src, off + 9);
+		int index = off + 13;
+		if (len < 0 || primary < 0 || primary > len || mtfLen < 0)
+			throw new IOException("BWT 数据错误");
+
+		byte[] mtf = new byte[mtfLen];
+		if (entropy == ENTROPY_RANS) {
+			if (RANS.decodedLen(src, index) != mtfLen)
+				throw new IOException("BWT 数据错误");
+			index = RANS.decode(src, index, mtf, 0);
+		} else if (entropy == ENTROPY_HUFFMAN) {
+			CanonicalCode canonicalCode = CanonicalCode.read(src, index);
+			index += canonicalCode.byteSize();
+			int dataLen = ParallelCoder.readInt(src, index);
+			index += 4;
+			BitReader in = new BitReader(src, index, dataLen);
+			if (mtfLen > 0 && canonicalCode.decode(in, 8L * dataLen, mtf, 0, mtfLen) != mtfLen)
+				throw new IOException("BWT 数据错误");
+			index += dataLen;
+		} else {
+			throw new IOException("不支持的熵编码方式: " + entropy);
+		}
+
+		byte[] last = new byte[len + 1];
+		mtfDecode(mtf, mtfLen, last, primary);
+		BWT.inverse(last, 0, len, primary, dst, dstOff);
+		return index;
+	}
+
+	private static CompressResult encodeBlock(byte[] bytes, int len, int entropy) throws IOException {
+		CompressResult result = new CompressResult(len / 2 + 1024);
+		encode(bytes, 0, len, entropy, result);
+		return result;
+	}
+
+	private static byte[] decodeBlock(byte[] block) throws IOException {
+		byte[] text = new byte[decodedLen(block, 0)];
+		decode(block, 0, text, 0);
+		return text;
+	}
+
+	public void compress(String filepath) throws IOException {
+
+		// 获取压缩后的文件名
+		String compressFilename = "";
+		String[] t = filepath.split("\\.");
+		for (int i = 0; i < t.length - 1; i++) {
+			compressFilename += t[i];
+		}
+		compressFilename += ".bwtz";
+
+		MappedInput in = new MappedInput(filepath);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(compressFilename)));
+
+		int entropy = this.entropy;
+		ParallelCoder.pipeline(threadNum, block -> {
+			long pos = (long) block * blockSize;
+			if (pos >= in.size())
+				return null;
+			int len = (int) Math.min(blockSize, in.size() - pos);
+			byte[] bytes = new byte[len];
+			in.read(pos, bytes, 0, len);
+			return () -> encodeBlock(bytes, len, entropy);
+		}, result -> {
+			out.writeInt(result.getByteLen());
+			out.write(result.getBytes(), 0, result.getByteLen());
+		});
+
+		// 结束标志
+		out.writeInt(0);
+
+		in.close();
+		out.close();
+	}
+
+	private String getExpendFilename(String filepath) {
+		String expendFilename = "";
+		String[] temp = filepath.split("\\.");
+		for (int i = 0; i < temp.length - 1; i++) {
+			expendFilename += temp[i];
+		}
+
+		if (new File(expendFilename + ".fastq").exists()) {
+			int c = 1;
+			while (new File(expendFilename + c + ".fastq").exists()) {
+				c += 1;
+			}
+			expendFilename += c + ".fastq";
+		}
+		return expendFilename;
+	}
+
+	public void expend(String filepath) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+		ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
+
+		ParallelCoder.pipeline(threadNum, block -> {
+			int blockLen = in.readInt();
+			if (blockLen == 0)
+				return null;
+			byte[] bytes = new byte[blockLen];
+			in.readFully(bytes);
+			return () -> decodeBlock(bytes);
+		}, out::write);
+
+		in.close();
+		out.close();
+	}
+
+}
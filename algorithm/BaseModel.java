@@ -0,0 +1,97 @@
+package algorithm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+// 碱基的 k 阶上下文模型，配合 RangeEncoder / RangeDecoder 做自适应算术编码
+// 前 k 个碱基（每个 2 位）哈希后作为上下文，每个上下文有 4 个概率，
+// 碱基的 2 位编码用二叉树逐位编码（结点 1 为高位，结点 2、3 为低位），
+// 测序数据的覆盖度很高，同一段序列会反复出现，相同上下文之后的碱基基本确定，所以可以远低于 2 bit
+//
+// 概率表很大（2^TABLE_BITS * 4 个 short），放在堆外内存中，每个线程只分配一次，
+// 每次建立模型时重新初始化，所以同一个线程同时只能使用一个 BaseModel
+public class BaseModel {
+
+	public static final int TABLE_BITS = 22;
+
+	public static final int MAX_ORDER = 16;
+
+	private static final ThreadLocal<ShortBuffer> TABLES = ThreadLocal.withInitial(() -> ByteBuffer
+			.allocateDirect(2 << (TABLE_BITS + 2)).order(ByteOrder.nativeOrder()).asShortBuffer());
+
+	// 碱基与 2 位编码的对应关系，与 2 bit 存储时相同，其他字符按 A 处理
+	private static final byte[] CODES = new byte[256];
+
+	private static final byte[] BASES = { 'A', 'T', 'G', 'C' };
+
+	static {
+		CODES['T'] = 1;
+		CODES['G'] = 2;
+		CODES['C'] = 3;
+	}
+
+	private final long mask;
+
+	private final ShortBuffer probs;
+
+	private long history; // 之前的碱基，每个 2 位，最近的在低位
+
+	public BaseModel(int order) {
+		if (order < 1 || order > MAX_ORDER)
+			throw new IllegalArgumentException("order: " + order);
+		this.mask = (1L << (2 * order)) - 1;
+
+		probs = TABLES.get();
+		for (int i = 0; i < probs.capacity(); i++)
+			probs.put(i, (short) RangeEncoder.PROB_INIT);
+	}
+
+	// 当前上下文对应的概率在 probs 中的起始位置
+	private int context() {
+		long h = (history & mask) * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> (64 - TABLE_BITS)) << 2;
+	}
+
+	// 编码一条 read 的碱基 bytes[off, off + len)
+	public void encode(RangeEncoder encoder, byte[] bytes, int off, int len) {
+		for (int i = 0; i < len; i++) {
+			int code = CODES[bytes[off + i] & 0xff];
+			int base = context();
+
+			int hi = code >> 1;
+			int lo = code & 1;
+			int p = probs.get(base + 1);
+			encoder.encode(p, hi);
+			probs.put(base + 1, (short) RangeEncoder.update(p, hi));
+
+			int node = base + 2 + hi;
+			p = probs.get(node);
+			encoder.encode(p, lo);
+			probs.put(node, (short) RangeEncoder.update(p, lo));
+
+			history = (history << 2) | code;
+		}
+	}
+
+	// 解码一条长度为 len 的 read 的碱基，写入 dst[off] 开始的位置
+	public void decode(RangeDecoder decoder, byte[] dst, int off, int len) {
+		for (int i = 0; i < len; i++) {
+			int base = context();
+
+			int p = probs.get(base + 1);
+			int hi = decoder.decode(p);
+			probs.put(base + 1, (short) RangeEncoder.update(p, hi));
+
+			int node = base + 2 + hi;
+			p = probs.get(node);
+			int lo = decoder.decode(p);
+			probs.put(node, (short) RangeEncoder.update(p, lo));
+
+			int code = (hi << 1) | lo;
+			dst[off + i] = BASES[code];
+			history = (history << 2) | code;
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package algorithm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// 碱基的 2 bit 批量打包和解包，A、T、G、C 分别为 0、1、2、3，每个字节 4 个碱基，第一个碱基在高位，
+// 与 BitWriter 每次写入 2 位的结果相同
+// 打包：一次读取 8 个字符到 long 中，用位运算同时计算 8 个编码（SWAR），
+//   ASCII 码的第 1 位：A、T 为 0，C、G 为 1，正好是编码的高位；第 1 位异或第 2 位正好是编码的低位，
+//   再把 8 个字节中的编码移位合并成 16 位，整个过程没有分支，
+//   其他字符也会得到一个编码，由调用者另外记录
+// 解包：256 项的表保存每个字节对应的 4 个碱基，一次写入 4 个字节
+public class BasePacker {
+
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private static final byte[] BASES = { 'A', 'T', 'G', 'C' };
+
+	private static final long LOW_BITS = 0x0101010101010101L;
+
+	// 字节对应的 4 个碱基
+	private static final int[] UNPACK = new int[256];
+
+	static {
+		for (int b = 0; b < 256; b++)
+			UNPACK[b] = BASES[b >>> 6] << 24 | BASES[(b >>> 4) & 3] << 16 | BASES[(b >>> 2) & 3] << 8 | BASES[b & 3];
+	}
+
+	// 单个字符的编码
+	private static int code(byte c) {
+		return (c & 2) | ((c >>> 1 ^ c >>> 2) & 1);
+	}
+
+	// 打包 src 中 [off, off + len) 的碱基，写入 dst[dstOff] 开始的 (len + 3) / 4 个字节
+	public static void pack(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		int i = 0;
+		int j = dstOff;
+		for (; i + 8 <= len; i += 8, j += 2) {
+			long v = (long) LONG.get(src, off + i);
+			long b1 = (v >>> 1) & LOW_BITS;
+			long b2 = (v >>> 2) & LOW_BITS;
+			// 每个字节中是一个碱基的编码
+			long x = (b1 << 1) | (b1 ^ b2);
+			// 相邻的编码两两合并：8 个 2 位 -> 4 个 4 位 -> 2 个 8 位 -> 16 位
+			x = (x | (x >>> 6)) & 0x000F000F000F000FL;
+			x = (x | (x >>> 12)) & 0x000000FF000000FFL;
+			x = (x | (x >>> 24)) & 0xFFFFL;
+			dst[j] = (byte) (x >>> 8);
+			dst[j + 1] = (byte) x;
+		}
+
+		// 剩下不足 8 个碱基，逐个写入，最后一个字节的低位补 0
+		int acc = 0;
+		int n = 0;
+		for (; i < len; i++) {
+			acc = (acc << 2) | code(src[off + i]);
+			if (++n == 4) {
+				dst[j++] = (byte) acc;
+				acc = 0;
+				n = 0;
+			}
+		}
+		if (n > 0)
+			dst[j] = (byte) (acc << (8 - 2 * n));
+	}
+
+	// 解包 src[off] 开始的 len 个碱基，写入 dst[dstOff] 开始的位置
+	public static void unpack(byte[] src, int off, byte[] dst, int dstOff, int len) {
+		int i = 0;
+		int j = off;
+		for (; i + 4 <= len; i += 4, j++)
+			INT.set(dst, dstOff + i, UNPACK[src[j] & 0xff]);
+
+		// 最后一个字节中只有一部分是碱基
+		for (int k = 0; i < len; i++, k++)
+			dst[dstOff + i] = BASES[(src[j] >>> (6 - 2 * k)) & 3];
+	}
+
+}
@@ -1,6 +1,4 @@
 package algorithm;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -12,10 +10,6 @@ public class BinRLE {
 
 		int max = (int) Math.pow(2, codeLen) - 1;
 
-		File file = new File(filepath);
-		long byteNum = file.length() + 1;
-		byte[] data = new byte[1024 * 1024 * 8];
-
 		String compressFilename = "";
 		String[] t = filepath.split("\\.");
 		for (int i = 0; i < t.length - 1; i++) {
@@ -23,67 +17,60 @@ public class BinRLE {
 		}
 		compressFilename += ".binrle";
 
-		BufferedInputStream in = new BufferedInputStream(new FileInputStream(filepath));
-		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(compressFilename));
+		MappedInput in = new MappedInput(filepath);
+		long byteNum = in.size() + 1;
+
+		FileOutputStream out = new FileOutputStream(compressFilename);
+		BitWriter writer = new BitWriter(out);
 
-		int index = 0;
 		int present = 0;
 		int old = 0;
 		int cnt = 0;
-		int buffer = 0;
-		int len = 0;
 		boolean first = true;
 
-		out: while (true) {
-			in.read(data);
-			for (int i = 0; i < 1024 * 1024 * 8; i++) {
-				for (int j = 7; j >= 0; j--) {
+		// 文件末尾之后多读取一个字节（按 0 处理），读到它时写入最后一段
+		for (long index = 0; index < byteNum; index++) {
+			byte data = index < byteNum - 1 ? in.get(index) : 0;
+			for (int j = 7; j >= 0; j--) {
 
-					present = ((data[i] & (1 << j)) != 0) ? 1 : 0;
-					// 在文件中写入第一个bit是1还是0
-					if (first) {
-						out.write(present);
-						first = false;
-					}
+				present = ((data & (1 << j)) != 0) ? 1 : 0;
+				// 在文件中写入第一个bit是1还是0
+				if (first) {
+					writer.write(present, 8);
+					first = false;
+				}
 
-					if (present != old || index == byteNum - 1) {
-
-						boolean one = true;
-						while (cnt > 0) {
-							buffer <<= codeLen;
-							len += codeLen;
-							if (one) {
-								if (cnt > max) {
-									buffer |= max;
-									one = !one;
-								} else {
-									buffer |= cnt;
-								}
-								cnt -= max;
-							} else {
+				if (present != old || index == byteNum - 1) {
+
+					boolean one = true;
+					while (cnt > 0) {
+						// 超过最大长度时，写入最大长度和一个 0，表示后面还是同一个 bit
+						int code = 0;
+						if (one) {
+							if (cnt > max) {
+								code = max;
 								one = !one;
+							} else {
+								code = cnt;
 							}
-							if (len == 8) {
-								out.write(buffer);
-								buffer = 0;
-								len = 0;
-							}
+							cnt -= max;
+						} else {
+							one = !one;
 						}
-
-						old = present;
-						cnt = 0;
+						writer.write(code, codeLen);
 					}
 
-					cnt++;
+					old = present;
+					cnt = 0;
 				}
 
-				index++;
-				if (index == byteNum) {
-					break out;
-				}
+				cnt++;
 			}
 		}
 
+		// 最后不足一个字节的编码不写入
+		writer.dropPartialByte();
+		writer.flush();
 		in.close();
 		out.close();
 
@@ -106,70 +93,48 @@ public class BinRLE {
 		return expendFilename;
 	}
 
+	// 写入 cnt 个 bit 位 present
+	private void writeBits(BitWriter writer, int present, int cnt) throws IOException {
+		while (cnt > 0) {
+			int n = Math.min(cnt, 32);
+			writer.write(present == 1 ? -1 : 0, n);
+			cnt -= n;
+		}
+	}
+
 	public void expend(String filepath, int codeLen) throws IOException {
 
 		File file = new File(filepath);
-		long byteNum = file.length() + 1;
+		long byteNum = file.length();
 
-		byte[] bytes = new byte[1024 * 1024];
-		byte[] t = new byte[1];
-		int present;
+		BitReader in = new BitReader(new FileInputStream(filepath));
+		ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
+		BitWriter writer = new BitWriter(out);
 
-		BufferedInputStream in = new BufferedInputStream(new FileInputStream(filepath));
-		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(getExpendFilename(filepath)));
+		// 第一个字节表示第一个 bit 是 1 还是 0
+		int present = in.read(8);
 
-		in.read(t);
-		present = t[0];
-		byteNum--;
-
-		long index = 0;
+		long codeNum = byteNum * (8 / codeLen);
 		int preNum = 0;
 		int num = 0;
 		int cnt = 0;
-		int buffer = 0;
-		int len = 0;
-
-		out: while (true) {
-			in.read(bytes);
-			for (int i = 0; i < 1024 * 1024 * 8; i++) {
-				for (int j = 0; j < 8 / codeLen; j++) {
-					preNum = num;
-					num = ((bytes[i] << (codeLen * j)) & 0xff) >>> (8 - codeLen);
-					cnt += preNum;
-					if (preNum != 0 && num != 0) {
-						for (int k = 0; k < cnt; k++) {
-							buffer <<= 1;
-							buffer |= present;
-							len++;
-							if (len == 8) {
-								out.write(buffer);
-								buffer = 0;
-								len = 0;
-							}
-						}
-						present = present == 1 ? 0 : 1;
-						cnt = 0;
-					}
-				}
 
-				index++;
-				if (index == byteNum) {
-					break out;
-				}
+		for (long i = 0; i < codeNum; i++) {
+			preNum = num;
+			num = in.read(codeLen);
+			cnt += preNum;
+			if (preNum != 0 && num != 0) {
+				writeBits(writer, present, cnt);
+				present = present == 1 ? 0 : 1;
+				cnt = 0;
 			}
 		}
 
-		for (int k = 0; k < num; k++) {
-			buffer <<= 1;
-			buffer |= present;
-			len++;
-			if (len == 8) {
-				out.write(buffer);
-				buffer = 0;
-				len = 0;
-			}
-		}
+		writeBits(writer, present, num);
 
+		// 原文件是整字节的，末尾不足一个字节的 bit 是压缩时多读取的，不写入
+		writer.dropPartialByte();
+		writer.flush();
 		in.close();
 		out.close();
 
@@ -0,0 +1,80 @@
+package algorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// 按位读取数据，高位在前
+// 使用 64 位的缓冲区，缓冲区中的 bit 不足时一次补充多个字节，
+// 所以每次可以查看（peek）最多 32 位，再按实际使用的位数跳过（skip）
+public class BitReader {
+
+	private byte[] bytes;
+
+	private int pos;
+
+	private int limit;
+
+	private InputStream in; // 为空时只读取 bytes 中的数据
+
+	private long buffer; // 未读取的 bit 从最高位开始存放
+
+	private int bufferLen;
+
+	private long bitPos; // 已经读取的总 bit 数
+
+	public BitReader(byte[] bytes, int off, int len) {
+		this.bytes = bytes;
+		this.pos = off;
+		this.limit = off + len;
+	}
+
+	public BitReader(InputStream in) {
+		this.in = in;
+		this.bytes = new byte[1024 * 1024];
+	}
+
+	private void refill() throws IOException {
+		while (bufferLen <= 56) {
+			if (pos == limit) {
+				if (in == null)
+					return;
+				int n = in.read(bytes, 0, bytes.length);
+				if (n <= 0)
+					return;
+				pos = 0;
+				limit = n;
+			}
+			buffer |= (bytes[pos++] & 0xffL) << (56 - bufferLen);
+			bufferLen += 8;
+		}
+	}
+
+	// 查看之后的 n 位（n <= 32），数据结束后的部分用 0 补齐
+	public int peek(int n) throws IOException {
+		if (bufferLen < n)
+			refill();
+		return (int) (buffer >>> (64 - n));
+	}
+
+	public void skip(int n) {
+		buffer <<= n;
+		bufferLen -= n;
+		bitPos += n;
+	}
+
+	public int read(int n) throws IOException {
+		int bits = peek(n);
+		skip(n);
+		return bits;
+	}
+
+	public long getBitPos() {
+		return bitPos;
+	}
+
+	public void close() throws IOException {
+		if (in != null)
+			in.close();
+	}
+
+}
@@ -0,0 +1,124 @@
+package algorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import pojo.CompressResult;
+
+// 按位写入数据，高位在前
+// 编码整体写入 64 位的累加器，累加器写满后一次向缓冲区写入 8 个字节，
+// 有输出流时缓冲区写满后写入输出流，没有输出流时数据写入 CompressResult，缓冲区自动扩容
+public class BitWriter {
+
+	private CompressResult result;
+
+	private byte[] bytes; // result 的字节数组
+
+	private int pos;
+
+	private OutputStream out;
+
+	private long buffer; // 未写入缓冲区的 bit，存放在低 bufferLen 位
+
+	private int bufferLen;
+
+	private long bitLen; // 写入的总 bit 数，不包括补齐的位
+
+	// 写入到 result 的末尾
+	public BitWriter(CompressResult result) {
+		this.result = result;
+		this.bytes = result.getBytes();
+		this.pos = result.getByteLen();
+	}
+
+	public BitWriter(OutputStream out) {
+		this(new CompressResult(1024 * 1024));
+		this.out = out;
+	}
+
+	// 清空 result 后重新开始写入，用于重复使用同一个 BitWriter
+	public void reset(CompressResult result) {
+		result.clear();
+		this.result = result;
+		this.bytes = result.getBytes();
+		this.pos = 0;
+		this.buffer = 0;
+		this.bufferLen = 0;
+		this.bitLen = 0;
+	}
+
+	// 保证缓冲区还能写入 n 个字节
+	private void ensureCapacity(int n) throws IOException {
+		if (pos + n <= bytes.length)
+			return;
+		if (out != null) {
+			out.write(bytes, 0, pos);
+			pos = 0;
+		}
+		result.setByteLen(pos);
+		result.ensureCapacity(n);
+		bytes = result.getBytes();
+	}
+
+	private void putLong(long v) throws IOException {
+		ensureCapacity(8);
+		bytes[pos] = (byte) (v >>> 56);
+		bytes[pos + 1] = (byte) (v >>> 48);
+		bytes[pos + 2] = (byte) (v >>> 40);
+		bytes[pos + 3] = (byte) (v >>> 32);
+		bytes[pos + 4] = (byte) (v >>> 24);
+		bytes[pos + 5] = (byte) (v >>> 16);
+		bytes[pos + 6] = (byte) (v >>> 8);
+		bytes[pos + 7] = (byte) v;
+		pos += 8;
+	}
+
+	// 写入 code 的低 len 位（len <= 32）
+	public void write(int code, int len) throws IOException {
+		long v = code & ((1L << len) - 1);
+		int free = 64 - bufferLen;
+		if (len < free) {
+			buffer = (buffer << len) | v;
+			bufferLen += len;
+		} else {
+			// 累加器写满，先写入高位部分，剩下的部分留在累加器中
+			int rest = len - free;
+			putLong((buffer << free) | (v >>> rest));
+			buffer = v & ((1L << rest) - 1);
+			bufferLen = rest;
+		}
+		bitLen += len;
+	}
+
+	// 将累加器中的数据写入缓冲区，不足一个字节时低位补 0
+	private void align() throws IOException {
+		int n = (bufferLen + 7) / 8;
+		ensureCapacity(n);
+		long v = buffer << (8 * n - bufferLen);
+		for (int i = n - 1; i >= 0; i--)
+			bytes[pos++] = (byte) (v >>> (8 * i));
+		buffer = 0;
+		bufferLen = 0;
+		result.setByteLen(pos);
+		result.setBitLen((int) bitLen);
+	}
+
+	// 丢弃累加器中最后不足一个字节的 bit
+	public void dropPartialByte() {
+		int n = bufferLen % 8;
+		buffer >>>= n;
+		bufferLen -= n;
+		bitLen -= n;
+	}
+
+	// 补齐到整字节，有输出流时将缓冲区写入输出流
+	public void flush() throws IOException {
+		align();
+		if (out != null) {
+			out.write(bytes, 0, pos);
+			pos = 0;
+			result.setByteLen(0);
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package algorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import pojo.CompressResult;
+
+// 范式编码（canonical code）
+// 编码只由每个字符的码长决定：按照（码长，字符）从小到大的顺序，
+// 同一码长的编码依次加 1，码长增加时编码再左移一位，
+// 所以文件中只需要保存码长表，不需要序列化整棵树，解码时直接由码长表重建编码
+public class CanonicalCode {
+
+	// 最大码长，建树后码长超过此值时，需要缩小字符频率后重新建树
+	public static final int MAX_LEN = 24;
+
+	// 解码表的索引位数，码长不超过此值的编码可以直接查表解码
+	public static final int TABLE_BITS = 12;
+
+	private int[] lens = new int[256];
+
+	private int[] codes = new int[256];
+
+	// 解码用：每种码长的第一个编码、编码个数、在 symbols 中的起始位置
+	private int[] firstCode = new int[MAX_LEN + 2];
+	private int[] count = new int[MAX_LEN + 2];
+	private int[] offset = new int[MAX_LEN + 2];
+
+	// 按照编码从小到大排列的字符
+	private int[] symbols;
+
+	// 解码表，下标为之后的 TABLE_BITS 位，表项中保存这些位能完整解码出的最多 3 个字符：
+	// 0~23 位为 3 个字符，24~25 位为字符个数，26~29 位为第一个字符的码长，30~33 位为总码长，
+	// 字符个数为 0 表示第一个编码的码长超过 TABLE_BITS，需要逐位解码
+	private long[] table;
+
+	public CanonicalCode(int[] lens) {
+
+		int symbolNum = 0;
+		for (int c = 0; c < 256; c++) {
+			this.lens[c] = lens[c];
+			if (lens[c] > 0) {
+				count[lens[c]]++;
+				symbolNum++;
+			}
+		}
+		symbols = new int[symbolNum];
+
+		// 计算每种码长的第一个编码
+		int code = 0;
+		int index = 0;
+		for (int len = 1; len <= MAX_LEN; len++) {
+			firstCode[len] = code;
+			offset[len] = index;
+			index += count[len];
+			code = (code + count[len]) << 1;
+		}
+
+		// 按照字符顺序依次分配编码
+		int[] nextCode = firstCode.clone();
+		int[] nextIndex = offset.clone();
+		for (int c = 0; c < 256; c++) {
+			int len = lens[c];
+			if (len > 0) {
+				codes[c] = nextCode[len]++;
+				symbols[nextIndex[len]++] = c;
+			}
+		}
+
+		// 构造时建好解码表，之后多个线程可以同时使用同一个对象解码
+		buildTable();
+	}
+
+	public int getLen(int c) {
+		return lens[c];
+	}
+
+	public int getCode(int c) {
+		return codes[c];
+	}
+
+	// 读取到长度为 len 的编码 code 后，查找对应的字符，不存在时返回 -1
+	public int decode(int code, int len) {
+		int i = code - firstCode[len];
+		if (i >= 0 && i < count[len])
+			return symbols[offset[len] + i];
+		return -1;
+	}
+
+	private void buildTable() {
+		long[] table = new long[1 << TABLE_BITS];
+
+		for (int v = 0; v < table.length; v++) {
+			long entry = 0;
+			int n = 0;
+			int used = 0;
+			int firstLen = 0;
+
+			// 从高位开始依次解码，直到剩余的位数不足以组成一个完整的编码
+			while (n < 3) {
+				int c = -1;
+				int len;
+				for (len = 1; used + len <= TABLE_BITS; len++) {
+					int code = (v >>> (TABLE_BITS - used - len)) & ((1 << len) - 1);
+					c = decode(code, len);
+					if (c >= 0)
+						break;
+				}
+				if (c < 0)
+					break;
+
+				entry |= (long) c << (8 * n);
+				if (n == 0)
+					firstLen = len;
+				used += len;
+				n++;
+			}
+
+			table[v] = entry | ((long) n << 24) | ((long) firstLen << 26) | ((long) used << 30);
+		}
+
+		this.table = table;
+	}
+
+	// 逐位解码一个字符，用于码长超过 TABLE_BITS 的编码
+	private int decodeSlow(BitReader in) throws IOException {
+		int bits = in.peek(MAX_LEN);
+		for (int len = 1; len <= MAX_LEN; len++) {
+			int c = decode(bits >>> (MAX_LEN - len), len);
+			if (c >= 0) {
+				in.skip(len);
+				return c;
+			}
+		}
+		throw new IOException("无效的编码");
+	}
+
+	// 从 in 中解码字符写入 dst，直到 in 的读取位置达到 bitEnd，或者 dst 中的 len 个字节已写满，
+	// 返回写入的字节数
+	public int decode(BitReader in, long bitEnd, byte[] dst, int off, int len) throws IOException {
+		int i = off;
+		int end = off + len;
+
+		// 剩余的位数不少于 TABLE_BITS 时，一次查表可以解码出多个字符
+		while (end - i >= 3 && bitEnd - in.getBitPos() >= TABLE_BITS) {
+			long entry = table[in.peek(TABLE_BITS)];
+			int n = (int) (entry >>> 24) & 3;
+			if (n == 0) {
+				dst[i++] = (byte) decodeSlow(in);
+				continue;
+			}
+			dst[i] = (byte) entry;
+			dst[i + 1] = (byte) (entry >>> 8);
+			dst[i + 2] = (byte) (entry >>> 16);
+			i += n;
+			in.skip((int) (entry >>> 30) & 0xf);
+		}
+
+		// 最后不足 TABLE_BITS 位时，每次只使用表项中的第一个字符，避免解码到末尾的补齐位
+		while (i < end && in.getBitPos() < bitEnd) {
+			long entry = table[in.peek(TABLE_BITS)];
+			if (((entry >>> 24) & 3) == 0) {
+				dst[i++] = (byte) decodeSlow(in);
+				continue;
+			}
+			dst[i++] = (byte) entry;
+			in.skip((int) (entry >>> 26) & 0xf);
+		}
+
+		return i - off;
+	}
+
+	// 码长表占用的字节数：16 位的字符数，每个字符 1 字节字符 + 1 字节码长
+	public int byteSize() {
+		return 2 + 2 * symbols.length;
+	}
+
+	public void write(OutputStream out) throws IOException {
+		out.write(symbols.length >> 8);
+		out.write(symbols.length);
+		for (int c = 0; c < 256; c++) {
+			if (lens[c] > 0) {
+				out.write(c);
+				out.write(lens[c]);
+			}
+		}
+	}
+
+	public void write(CompressResult out) {
+		out.write(symbols.length >> 8);
+		out.write(symbols.length);
+		for (int c = 0; c < 256; c++) {
+			if (lens[c] > 0) {
+				out.write(c);
+				out.write(lens[c]);
+			}
+		}
+	}
+
+	public static CanonicalCode read(byte[] bytes, int off) {
+		int symbolNum = ((bytes[off] & 0xff) << 8) | (bytes[off + 1] & 0xff);
+		int[] lens = new int[256];
+		for (int i = 0; i < symbolNum; i++)
+			lens[bytes[off + 2 + 2 * i] & 0xff] = bytes[off + 3 + 2 * i];
+		return new CanonicalCode(lens);
+	}
+
+	public static CanonicalCode read(InputStream in) throws IOException {
+		byte[] head = new byte[2];
+		readFully(in, head);
+		int symbolNum = ((head[0] & 0xff) << 8) | (head[1] & 0xff);
+		byte[] bytes = new byte[2 + 2 * symbolNum];
+		bytes[0] = head[0];
+		bytes[1] = head[1];
+		readFully(in, bytes, 2, 2 * symbolNum);
+		return read(bytes, 0);
+	}
+
+	private static void readFully(InputStream in, byte[] bytes) throws IOException {
+		readFully(in, bytes, 0, bytes.length);
+	}
+
+	private static void readFully(InputStream in, byte[] bytes, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(bytes, off, len);
+			if (n < 0)
+				throw new IOException("码长表不完整");
+			off += n;
+			len -= n;
+		}
+	}
+
+}
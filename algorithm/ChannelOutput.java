@@ -0,0 +1,68 @@
+package algorithm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// 通过 FileChannel 写出解压后的字节
+// 解码器直接写入 ASCII 字节，不经过 Writer 的字符集编码，也不需要拼接 String，
+// 较小的写入先放到一个大的堆外缓冲区中，满了以后用 FileChannel.write 一次写出，缓冲区一直重复使用，
+// 不小于缓冲区的字节数组（例如并行解码的一整块）不复制到缓冲区中，直接写出
+public class ChannelOutput extends OutputStream {
+
+	public static final int BUFFER_SIZE = 1024 * 1024;
+
+	private FileChannel channel;
+
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	public ChannelOutput(String filepath) throws IOException {
+		channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	// 把 buf 中剩下的字节全部写入文件
+	private void writeFully(ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			channel.write(buf);
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining())
+			flushBuffer();
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] bytes, int off, int len) throws IOException {
+		if (len > buffer.remaining())
+			flushBuffer();
+
+		if (len >= BUFFER_SIZE)
+			writeFully(ByteBuffer.wrap(bytes, off, len));
+		else
+			buffer.put(bytes, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		channel.close();
+	}
+
+}
@@ -0,0 +1,106 @@
+package algorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import pojo.FastqBlock;
+
+// 按字节解析 FASTQ 文件，不做字符集解码，也不为每行创建 String
+// 每次读取若干个 read 到一个新的字节数组中，只记录每行的起止位置，
+// 块之间多读的不完整的行复制到下一个块的开头，
+// 查找换行符时一次检查 8 个字节（SWAR），行尾的 '\r' 不属于行的内容，与 BufferedReader.readLine 相同
+public class FastqParser {
+
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class,
+			ByteOrder.LITTLE_ENDIAN);
+
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+	private static final long LOW_BITS = 0x0101010101010101L;
+
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private InputStream in;
+
+	private boolean eof;
+
+	// 上一个块之后已经读取的数据
+	private byte[] rest = new byte[0];
+
+	private int capacity = 1024 * 1024; // 新块的初始大小，按上一个块的大小调整
+
+	public FastqParser(InputStream in) {
+		this.in = in;
+	}
+
+	// bytes 中 [from, to) 第一个换行符的位置，没有时返回 -1
+	private static int indexOfNewline(byte[] bytes, int from, int to) {
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			// 等于 '\n' 的字节异或后为 0，最低的为 0 的字节就是第一个换行符
+			long v = (long) LONG.get(bytes, i) ^ NEWLINES;
+			long zero = (v - LOW_BITS) & ~v & HIGH_BITS;
+			if (zero != 0)
+				return i + (Long.numberOfTrailingZeros(zero) >>> 3);
+		}
+		for (; i < to; i++)
+			if (bytes[i] == '\n')
+				return i;
+		return -1;
+	}
+
+	// 读取最多 readNum 个 read，文件结束时返回 null
+	public FastqBlock next(int readNum) throws IOException {
+		int maxLines = 4 * readNum;
+		int[] starts = new int[maxLines];
+		int[] ends = new int[maxLines];
+
+		byte[] bytes = new byte[Math.max(capacity, 2 * rest.length)];
+		System.arraycopy(rest, 0, bytes, 0, rest.length);
+		int limit = rest.length;
+
+		int lineNum = 0;
+		int lineStart = 0;
+		int pos = 0; // 之前的数据中没有换行符
+		while (lineNum < maxLines) {
+			int newline = indexOfNewline(bytes, pos, limit);
+			if (newline < 0) {
+				pos = limit;
+				if (eof) {
+					// 最后一行没有换行符
+					if (lineStart < limit) {
+						starts[lineNum] = lineStart;
+						ends[lineNum++] = bytes[limit - 1] == '\r' ? limit - 1 : limit;
+						lineStart = limit;
+					}
+					break;
+				}
+				if (limit == bytes.length)
+					bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+				int n = in.read(bytes, limit, bytes.length - limit);
+				if (n < 0)
+					eof = true;
+				else
+					limit += n;
+				continue;
+			}
+
+			int end = newline > lineStart && bytes[newline - 1] == '\r' ? newline - 1 : newline;
+			starts[lineNum] = lineStart;
+			ends[lineNum++] = end;
+			lineStart = pos = newline + 1;
+		}
+
+		rest = Arrays.copyOfRange(bytes, lineStart, limit);
+		capacity = Math.max(capacity, lineStart + lineStart / 8);
+
+		if (lineNum == 0)
+			return null;
+		return new FastqBlock(bytes, lineNum, starts, ends);
+	}
+
+}
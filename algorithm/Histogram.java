@@ -0,0 +1,133 @@
+package algorithm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// 字节频率统计
+// 使用 4 个交错的子直方图，相邻的字节计入不同的数组，
+// 连续相同的字节不会反复读写同一个计数器，之后再合并到 long[256] 中，
+// 数据较多时用 ForkJoinPool 分段统计后合并，
+// 统计文件时直接扫描内存映射的窗口，每个线程统计窗口中不相交的一段
+public class Histogram {
+
+	private static final int PARALLEL_THRESHOLD = 1024 * 1024; // 每个任务至少统计的字节数
+
+	// 统计 bytes 中 [off, off + len) 的字节，累加到 counts 中
+	public static void count(byte[] bytes, int off, int len, long[] counts) {
+		if (len < 1024) {
+			for (int i = off; i < off + len; i++)
+				counts[bytes[i] & 0xff]++;
+			return;
+		}
+
+		int[] c0 = new int[256];
+		int[] c1 = new int[256];
+		int[] c2 = new int[256];
+		int[] c3 = new int[256];
+
+		int i = off;
+		int end = off + len;
+		for (; i + 4 <= end; i += 4) {
+			c0[bytes[i] & 0xff]++;
+			c1[bytes[i + 1] & 0xff]++;
+			c2[bytes[i + 2] & 0xff]++;
+			c3[bytes[i + 3] & 0xff]++;
+		}
+		for (; i < end; i++)
+			c0[bytes[i] & 0xff]++;
+
+		for (int c = 0; c < 256; c++)
+			counts[c] += (long) c0[c] + c1[c] + c2[c] + c3[c];
+	}
+
+	// 统计 buf 中 [off, off + len) 的字节，只使用绝对位置读取
+	private static void count(ByteBuffer buf, int off, int len, long[] counts) {
+		if (buf.hasArray()) {
+			count(buf.array(), buf.arrayOffset() + off, len, counts);
+			return;
+		}
+
+		int[] c0 = new int[256];
+		int[] c1 = new int[256];
+		int[] c2 = new int[256];
+		int[] c3 = new int[256];
+
+		int i = off;
+		int end = off + len;
+		for (; i + 4 <= end; i += 4) {
+			c0[buf.get(i) & 0xff]++;
+			c1[buf.get(i + 1) & 0xff]++;
+			c2[buf.get(i + 2) & 0xff]++;
+			c3[buf.get(i + 3) & 0xff]++;
+		}
+		for (; i < end; i++)
+			c0[buf.get(i) & 0xff]++;
+
+		for (int c = 0; c < 256; c++)
+			counts[c] += (long) c0[c] + c1[c] + c2[c] + c3[c];
+	}
+
+	private static class CountTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer buf;
+		private final int off;
+		private final int len;
+
+		CountTask(ByteBuffer buf, int off, int len) {
+			this.buf = buf;
+			this.off = off;
+			this.len = len;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (len <= PARALLEL_THRESHOLD) {
+				long[] counts = new long[256];
+				count(buf, off, len, counts);
+				return counts;
+			}
+
+			// 分成两半，一半交给其他线程，一半在当前线程统计
+			int half = len / 2;
+			CountTask left = new CountTask(buf, off, half);
+			CountTask right = new CountTask(buf, off + half, len - half);
+			left.fork();
+			long[] counts = right.compute();
+			long[] leftCounts = left.join();
+			for (int c = 0; c < 256; c++)
+				counts[c] += leftCounts[c];
+			return counts;
+		}
+	}
+
+	// 并行统计 buf 中 [off, off + len) 的字节
+	private static long[] countParallel(ByteBuffer buf, int off, int len) {
+		if (len <= PARALLEL_THRESHOLD) {
+			long[] counts = new long[256];
+			count(buf, off, len, counts);
+			return counts;
+		}
+		return ForkJoinPool.commonPool().invoke(new CountTask(buf, off, len));
+	}
+
+	// 统计整个文件的字节频率
+	public static long[] countFile(String filepath) throws IOException {
+		long[] counts = new long[256];
+
+		MappedInput in = new MappedInput(filepath);
+		for (int i = 0; i < in.getWindowNum(); i++) {
+			ByteBuffer window = in.getWindow(i);
+			long[] windowCounts = countParallel(window, 0, window.limit());
+			for (int c = 0; c < 256; c++)
+				counts[c] += windowCounts[c];
+		}
+		in.close();
+
+		return counts;
+	}
+
+}
@@ -2,253 +2,394 @@ package algorithm;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import pojo.CompressResult;
+
+// LZW 编码
+// 编码 0 ~ 255 是单个字节，CLEAR 表示清空编码表，之后的编码依次分配给新的字符串，
+// 编码的位数随编码表增长，从 MIN_BITS 位开始，每个编码都用能表示当前最大编码的最少位数，最多 maxBits 位，
+// 编码表满了以后不再添加字符串，每读入 CHECK_GAP 个字节检查一次压缩率，比之前下降时写入 CLEAR，重新开始建表
+// 解码时按同样的规则重建编码表，所以也能算出每个编码的位数
+//
+// .lzw 文件：最大码长（8 位）+ 块大小（32 位）+ 数据
+// 块大小为 0 时不分块，数据是整个文件的编码；
+// 否则文件按块大小切分，每块使用新的编码表在线程池中独立编码，
+// 每块写入：原始字节数（32 位）+ 编码后的字节数（32 位）+ 编码数据，原始字节数为 0 表示结束
+public class LZW extends Algorithm {
 
-import pojo.Prefix;
+	public static final int CLEAR = 256;
 
-// 三向单词查找树
-// 每个结点都含有一个字符、三条链接和一个值，
-// 三条链接分别对应着当前字母小于、等于和大于结点字母的值
-class TST {
+	private static final int FIRST = 257; // 第一个新字符串的编码
 
-	private class Node {
-		char c; // 字符
-		Node left, mid, right;
-		Integer val; // 编码值
-	}
+	public static final int MIN_BITS = 9;
 
-	private Node root;
+	public static final int MAX_BITS = 20;
 
-	// 在树中查找字符串 s 的 beginIndex 之后部分的最长前缀
-	public Prefix longestPrefixOf(String s, int beginIndex) {
+	private static final int CHECK_GAP = 64 * 1024;
 
-		int[] endIndexAndVal = search(root, s, beginIndex, 0, 0);
+	// 分块压缩时默认的块大小
+	public static final int BLOCK_SIZE = 16 * 1024 * 1024;
 
-		if (endIndexAndVal[0] >= beginIndex)
-			return new Prefix(s.substring(beginIndex, endIndexAndVal[0] + 1), endIndexAndVal[1]);
-		else
-			return null;
-	}
+	// 不分块解压时，解码结果每达到这么多字节写出一次
+	private static final int OUTPUT_SIZE = 1024 * 1024;
 
-	// 最长前缀的最后一个字符在字符串 s 中的位置
-	// 字符串 s 的 index 之后的部分和树一起遍历
-	private int[] search(Node node, String s, int index, int endIndex, int val) {
-
-		// 上一个访问的结点是叶子结点，表明已经找到最长前缀
-		if (node == null)
-			return new int[] { endIndex, val };
-		// index 达到字符串的最后一位，返回找到的最长前缀
-		if (index == s.length())
-			return new int[] { endIndex, val };
-
-		// c 为字符串 index 位置的字符
-		char c = s.charAt(index);
-
-		// 若当前的字符与当前结点的代表的字符相同
-		// 则字符串索引 index 加 1，当前访问结点变为中间子结点
-		Node next = null;
-		if (c == node.c) {
-			if (node.val != null) {
-				endIndex = index;
-				val = node.val;
-			}
-			index++;
-			next = node.mid;
-		}
+	private int maxBits = 16;
+
+	private int blockSize = 0;
 
-		// 若小于，则当前访问结点变为左子结点
-		if (c < node.c)
-			next = node.left;
+	private int threadNum = Runtime.getRuntime().availableProcessors();
 
-		// 若大于，则当前访问结点变为右子结点
-		if (c > node.c)
-			next = node.right;
+	// 按行压缩、解压时使用，编码表在多次调用之间保留
+	private Encoder textEncoder;
 
-		return search(next, s, index, endIndex, val);
+	private Decoder textDecoder;
 
+	private BitWriter textWriter;
+
+	public void setMaxBits(int maxBits) {
+		if (maxBits < MIN_BITS || maxBits > MAX_BITS)
+			throw new IllegalArgumentException("maxBits: " + maxBits);
+		this.maxBits = maxBits;
 	}
 
-	// 获取一个字符串的编码值
-	public Integer get(String key) {
+	// 为 0 时不分块，整个文件使用一个编码表
+	public void setBlockSize(int blockSize) {
+		this.blockSize = blockSize;
+	}
 
-		Node x = get(root, key, 0);
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
+	}
 
-		if (x == null)
-			return null;
-		return x.val;
+	// 下一个新字符串的编码为 next 时，编码的位数
+	private static int bits(int next) {
+		return Math.max(MIN_BITS, 32 - Integer.numberOfLeadingZeros(next - 1));
 	}
 
-	private Node get(Node x, String key, int index) {
+	// LZW 的编码表
+	// 除了单个字符以外，每个字符串都是表中已有的字符串加上一个字节，
+	// 所以用 (前缀的编码, 下一个字节) 作为键，保存在开放寻址（线性探测）的 int 哈希表中，
+	// 编码时每读入一个字节只需要查找一次，查找和插入都不需要创建对象，也没有递归
+	private static final class Dictionary {
 
-		if (x == null)
-			return null;
+		private static final int EMPTY = -1;
 
-		char c = key.charAt(index);
+		private int[] keys;
 
-		if (c < x.c)
-			return get(x.left, key, index);
-		else if (c > x.c)
-			return get(x.right, key, index);
-		else if (index < key.length() - 1)
-			return get(x.mid, key, index + 1);
-		else
-			return x;
-	}
+		private int[] codes;
 
-	// 将字符串 key 的编码之存储到 key 最后一个字符对应结点上
-	// 要先找到 key 最后一个字符对应的结点，然后存储
-	public void put(String key, int val) {
-		root = put(root, key, val, 0);
-	}
+		private int shift;
 
-	private Node put(Node x, String key, int val, int d) {
+		// 最多保存 capacity 个字符串，表的大小至少为 2 倍，保证探测的次数较少
+		Dictionary(int capacity) {
+			int bits = 32 - Integer.numberOfLeadingZeros(2 * capacity - 1);
+			keys = new int[1 << bits];
+			codes = new int[1 << bits];
+			shift = 32 - bits;
+			clear();
+		}
+
+		void clear() {
+			Arrays.fill(keys, EMPTY);
+		}
+
+		private int index(int key) {
+			return (key * 0x9E3779B1) >>> shift;
+		}
 
-		char c = key.charAt(d);
+		// 前缀 prefix 加上字节 b 组成的字符串的编码，不在表中时返回 -1
+		int get(int prefix, int b) {
+			int key = (prefix << 8) | b;
+			int mask = keys.length - 1;
+			for (int i = index(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+				if (keys[i] == key)
+					return codes[i];
+			}
+			return -1;
+		}
 
-		if (x == null) {
-			x = new Node();
-			x.c = c;
+		void put(int prefix, int b, int code) {
+			int key = (prefix << 8) | b;
+			int mask = keys.length - 1;
+			int i = index(key);
+			while (keys[i] != EMPTY)
+				i = (i + 1) & mask;
+			keys[i] = key;
+			codes[i] = code;
 		}
 
-		if (c < x.c)
-			x.left = put(x.left, key, val, d);
-		else if (c > x.c)
-			x.right = put(x.right, key, val, d);
-		else if (d < key.length() - 1)
-			x.mid = put(x.mid, key, val, d + 1);
-		else
-			x.val = val;
-		return x;
 	}
 
-}
+	// 编码器，输入的数据可以分多次传入，只需要保存当前匹配的字符串
+	private static class Encoder {
 
-public class LZW extends Algorithm {
+		private final Dictionary dict;
 
-	private String text;
+		private final int limit; // 编码总数
 
-	private int R = 128; // 输入字符数，asc 有 128 个 ，需要 8 位
+		private final boolean adaptive; // 编码表满了以后是否检查压缩率
 
-	private int codeLen = 16; // 编码长度
+		private BitWriter writer;
 
-	private int L = (int) Math.pow(2, codeLen); // 编码总数
+		private int next = FIRST;
 
-	private TST tst = new TST();
+		private int prefix = -1; // 当前匹配的字符串的编码，-1 表示还没有读入字节
 
-	private String[] st = new String[L];
+		// 上次清空编码表之后读入的字节数和写出的 bit 数
+		private long inCount;
+		private long outBits;
+		private long bestRatio; // 检查时最好的压缩率
+		private long checkAt = CHECK_GAP;
 
-	private int code = R + 1; // compress table index
+		Encoder(int maxBits, boolean adaptive, BitWriter writer) {
+			this.limit = 1 << maxBits;
+			this.dict = new Dictionary(limit);
+			this.adaptive = adaptive;
+			this.writer = writer;
+		}
 
-	private int stIndex = 129; // expend table index
+		void setWriter(BitWriter writer) {
+			this.writer = writer;
+		}
 
-	{
-		for (int i = 0; i < R; i++)
-			tst.put("" + (char) i, i);
+		private void writeCode(int code) throws IOException {
+			int n = bits(next);
+			writer.write(code, n);
+			outBits += n;
+		}
 
-		int stIndex = 0;
-		for (stIndex = 0; stIndex < 128; stIndex++)
-			st[stIndex] = "" + (char) stIndex;
-		st[stIndex++] = " ";
-	}
+		// 当前字符串加上下一个字节在表中时继续向后匹配，不在表中时当前字符串就是最长前缀，
+		// 写入它的编码，再把当前字符串加上下一个字节添加到表中
+		void encode(ByteBuffer buf, int off, int len) throws IOException {
+			int i = off;
+			int end = off + len;
+			if (prefix < 0 && i < end) {
+				prefix = buf.get(i++) & 0xff;
+				inCount++;
+			}
+
+			for (; i < end; i++) {
+				int b = buf.get(i) & 0xff;
+				inCount++;
+				int code = dict.get(prefix, b);
+				if (code >= 0) {
+					prefix = code;
+					continue;
+				}
+
+				writeCode(prefix);
+				if (next < limit)
+					dict.put(prefix, b, next++);
+				else if (adaptive && inCount >= checkAt)
+					check();
+				prefix = b;
+			}
+		}
+
+		// 压缩率为上次清空编码表之后读入的字节数 / 写出的 bit 数（定点数，低 16 位为小数），
+		// 比上次检查时下降说明编码表已经不适合之后的数据
+		private void check() throws IOException {
+			checkAt = inCount + CHECK_GAP;
+			long ratio = (inCount << 16) / outBits;
+			if (ratio >= bestRatio) {
+				bestRatio = ratio;
+				return;
+			}
+
+			writeCode(CLEAR);
+			dict.clear();
+			next = FIRST;
+			inCount = 0;
+			outBits = 0;
+			bestRatio = 0;
+			checkAt = CHECK_GAP;
+		}
 
-	private void readFile(String filepath) throws FileNotFoundException, IOException {
-		InputStream is = new FileInputStream(filepath);
-		byte[] bytes = new byte[is.available()];
-		is.read(bytes);
-		this.text = new String(bytes);
-		is.close();
+		// 写入最后一个字符串的编码
+		void finish() throws IOException {
+			if (prefix >= 0)
+				writeCode(prefix);
+			prefix = -1;
+		}
 	}
 
-	public ArrayList<Byte> compressText(String text){
+	// 解码器，编码表在多次调用之间保留
+	// 编码表不保存字符串，每个新字符串只记录前缀的编码、最后一个字节、长度，
+	// 解码时从最后一个字节开始沿着前缀向前，直接写入输出缓冲区中对应的位置，
+	// 另外新字符串就是上一个字符串加上当前字符串的首字节，在输出中是连续的，所以记录它在输出中的位置，
+	// 这个位置还在输出缓冲区中时直接复制，不需要逐个字节地查找前缀
+	private static class Decoder {
 
-		ArrayList<Byte> bytes = new ArrayList<>();
+		private final int limit;
 
-		int beginIndex = 0;
-		int buffer = 0;
-		int len = 0;
+		private int[] prefix;
 
-		while (beginIndex < text.length()) {
+		private byte[] suffix;
 
-			Prefix prefix = tst.longestPrefixOf(text, beginIndex);
+		private int[] length;
 
-			for (int i = codeLen - 1; i >= 0; i--) {
-				buffer <<= 1;
-				buffer |= ((prefix.code & (1 << i)) != 0) ? 1 : 0;
-				len++;
-				if (len == 8) {
-					bytes.add((byte) buffer);
-					buffer = 0;
-					len = 0;
-				}
-			}
+		private long[] start; // 字符串在输出中的位置（从解码开始的总字节数）
+
+		private int next = FIRST;
+
+		private int prev = -1; // 上一个编码，为 -1 时下一个编码是清空编码表后的第一个编码
+
+		private long prevStart; // 上一个编码的字符串在输出中的位置
+
+		private byte prevFirst; // 上一个编码的字符串的首字节
 
-			int plen = prefix.str.length();
-			if (plen < text.length() - beginIndex && code < L)
-				tst.put(text.substring(beginIndex, beginIndex + plen + 1), code++);
+		private long total; // 已经解码的总字节数
 
-			beginIndex += plen;
+		Decoder(int maxBits) {
+			this.limit = 1 << maxBits;
+			this.prefix = new int[limit];
+			this.suffix = new byte[limit];
+			this.length = new int[limit];
+			this.start = new long[limit];
+			Arrays.fill(length, 0, CLEAR, 1);
 		}
 
-		if (len != 0) {
-			buffer <<= 4;
-			bytes.add((byte) buffer);
+		// 下一个编码是新的一段数据的开头，与之前的字符串之间没有新的字符串
+		void restart() {
+			prev = -1;
 		}
 
-		return bytes;
-	}
+		// 把编码 code 的字符串写入 bytes[pos] 开始的位置，base 是 bytes[0] 在输出中的位置
+		private void expand(int code, byte[] bytes, int pos, long base) {
+			if (code < CLEAR) {
+				bytes[pos] = (byte) code;
+				return;
+			}
 
-	public String expendBytes(byte[] bytes, int bytesLen){
-		StringBuilder text = new StringBuilder();
-
-		int code = 0;
-		String val = "";
-		int len = 0;
-
-		boolean firstCode = true;
-
-		for (int i = 0; i < bytesLen; i++) {
-			for (int j = 1; j >= 0; j--) {
-				code <<= 4;
-				code |= (bytes[i] >> 4 * j) & 0xf;
-				len += 4;
-				if (len == codeLen) {
-					if (firstCode){
-						val = st[code];
-						firstCode = false;
-					} else {
-						text.append(val);
-
-						String s = st[code];
-						if (stIndex == code)
-							s = val + val.charAt(0);
-						if (stIndex < L)
-							st[stIndex++] = val + s.charAt(0);
-
-						val = s;
-					}
-					code = 0;
-					len = 0;
+			int len = length[code];
+			if (start[code] >= base) {
+				int from = (int) (start[code] - base);
+				if (from + len <= pos) {
+					System.arraycopy(bytes, from, bytes, pos, len);
+				} else {
+					// 刚刚添加的字符串，最后一个字节就是当前要写入的第一个字节，也是上一个字符串的首字节
+					System.arraycopy(bytes, from, bytes, pos, len - 1);
+					bytes[pos + len - 1] = bytes[from];
 				}
+				return;
+			}
+
+			// 之前的输出已经写出，从后向前沿着前缀写入
+			int p = pos + len - 1;
+			while (code >= FIRST) {
+				bytes[p--] = suffix[code];
+				code = prefix[code];
 			}
+			bytes[p] = (byte) code;
 		}
 
-		text.append(val);
+		// 解码直到读完 bitNum 位或者 out 中至少有 maxLen 个字节，返回是否还有数据
+		// out 中只能有这个解码器的输出，调用者可以在两次调用之间清空 out
+		// 编码器写入一个编码后才添加新的字符串，所以解码时编码表比编码时少一个字符串（第一个编码除外）
+		boolean decode(BitReader in, long bitNum, CompressResult out, int maxLen) throws IOException {
+			long base = total - out.getByteLen();
+			while (out.getByteLen() < maxLen) {
+				int n = bits(prev < 0 ? next : Math.min(next + 1, limit));
+				// 最后一个字节中补齐的 bit 不足一个编码
+				if (in.getBitPos() + n > bitNum)
+					return false;
+
+				int code = in.read(n);
+				if (code == CLEAR) {
+					next = FIRST;
+					prev = -1;
+					continue;
+				}
+				if (code > next || (code == next && (prev < 0 || next == limit)))
+					throw new IOException("LZW 数据损坏");
+
+				// 上一个字符串加上当前字符串的首字节是编码器添加的字符串，
+				// 当前编码就是这个新字符串时，首字节就是上一个字符串的首字节
+				boolean add = prev >= 0 && next < limit;
+				if (add) {
+					prefix[next] = prev;
+					suffix[next] = prevFirst;
+					length[next] = length[prev] + 1;
+					start[next] = prevStart;
+				}
 
-		return text.toString();
+				int pos = out.getByteLen();
+				int len = length[code];
+				out.ensureCapacity(len);
+				byte[] bytes = out.getBytes();
+				expand(code, bytes, pos, base);
+				out.setByteLen(pos + len);
 
+				if (add)
+					suffix[next++] = bytes[pos];
+
+				prev = code;
+				prevStart = base + pos;
+				prevFirst = bytes[pos];
+				total += len;
+			}
+			return true;
+		}
 	}
 
-	public void compress(String filepath) throws IOException {
+	// 压缩一行文本 bytes[off, off + len)，结果写入 result（先清空），编码表在多次调用之间保留
+	public void compressText(byte[] bytes, int off, int len, CompressResult result) throws IOException {
 
-		readFile(filepath);
+		if (textWriter == null) {
+			textWriter = new BitWriter(result);
+			textEncoder = new Encoder(maxBits, false, textWriter);
+		}
+		textWriter.reset(result);
+
+		textEncoder.encode(ByteBuffer.wrap(bytes), off, len);
+		textEncoder.finish();
+
+		textWriter.flush();
+	}
+
+	// 解压 compressText 得到的一行文本，追加到 text 的末尾，返回这行文本的字节数
+	// text 中只能有这个对象之前解压的文本，调用者可以在两次调用之间清空 text
+	public int expendBytes(byte[] bytes, int off, int len, CompressResult text) throws IOException {
+		if (textDecoder == null)
+			textDecoder = new Decoder(maxBits);
+
+		int start = text.getByteLen();
+		BitReader in = new BitReader(bytes, off, len);
+		textDecoder.restart();
+		textDecoder.decode(in, 8L * len, text, Integer.MAX_VALUE);
+		return text.getByteLen() - start;
+	}
+
+	private CompressResult compressBlock(ByteBuffer bytes, int len) throws IOException {
+		CompressResult result = new CompressResult(len / 2);
+		BitWriter writer = new BitWriter(result);
+		Encoder encoder = new Encoder(maxBits, true, writer);
+		encoder.encode(bytes, 0, len);
+		encoder.finish();
+		writer.flush();
+		return result;
+	}
+
+	private CompressResult expendBlock(byte[] bytes, int len) throws IOException {
+		CompressResult text = new CompressResult(len);
+		BitReader in = new BitReader(bytes, 0, bytes.length);
+		new Decoder(maxBits).decode(in, 8L * bytes.length, text, Integer.MAX_VALUE);
+		if (text.getByteLen() != len)
+			throw new IOException("LZW 数据损坏");
+		return text;
+	}
+
+	public void compress(String filepath) throws IOException {
 
 		// 获取加密后的文件名称
 		String compressFilename = "";
@@ -258,53 +399,51 @@ public class LZW extends Algorithm {
 		}
 		compressFilename += ".lzw";
 
-		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(compressFilename));
-
-		TST tst = new TST();
-
-		// 先将每一种字符的编码存储到树中
-		for (int i = 0; i < R; i++)
-			tst.put("" + (char) i, i);
-
-		int code = R + 1;
-		int beginIndex = 0;
-		int buffer = 0;
-		int len = 0;
-
-		while (beginIndex < text.length()) {
+		MappedInput in = new MappedInput(filepath);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compressFilename)));
 
-			// 找到最长前缀及其编码
-			Prefix prefix = tst.longestPrefixOf(text, beginIndex);
+		out.write(maxBits);
+		out.writeInt(blockSize);
 
-			// 存储最长前缀的编码，编码是 16 位
-			for (int i = codeLen - 1; i >= 0; i--) {
-				buffer <<= 1;
-				buffer |= ((prefix.code & (1 << i)) != 0) ? 1 : 0;
-				len++;
-				if (len == 8) {
-					out.write(buffer);
-					buffer = 0;
-					len = 0;
-				}
+		if (blockSize == 0) {
+			// 逐个窗口读入，只保存当前匹配的字符串，不需要把整个文件读入内存
+			BitWriter writer = new BitWriter(out);
+			Encoder encoder = new Encoder(maxBits, true, writer);
+			for (int i = 0; i < in.getWindowNum(); i++) {
+				ByteBuffer window = in.getWindow(i);
+				encoder.encode(window, 0, window.limit());
 			}
-
-			// 最长前缀 加上 之后一个字符 ，将形成的字符串存储到树中，编码为当前编码加 1
-			int plen = prefix.str.length();
-			if (plen < text.length() - beginIndex && code < L)
-				tst.put(text.substring(beginIndex, beginIndex + plen + 1), code++);
-
-			beginIndex += plen;
-		}
-
-		if (len != 0) {
-			buffer <<= 4;
-			out.write(buffer);
+			encoder.finish();
+			writer.flush();
+		} else {
+			compressBlocks(in, out);
 		}
 
+		in.close();
 		out.close();
 
 	}
 
+	private void compressBlocks(MappedInput in, DataOutputStream out) throws IOException {
+		Deque<Integer> lens = new ArrayDeque<>();
+		ParallelCoder.pipeline(threadNum, block -> {
+			long pos = (long) block * blockSize;
+			if (pos >= in.size())
+				return null;
+			int len = (int) Math.min(blockSize, in.size() - pos);
+			ByteBuffer bytes = in.slice(pos, len);
+			lens.add(len);
+			return () -> compressBlock(bytes, len);
+		}, result -> {
+			out.writeInt(lens.poll());
+			out.writeInt(result.getByteLen());
+			out.write(result.getBytes(), 0, result.getByteLen());
+		});
+
+		// 结束标志
+		out.writeInt(0);
+	}
+
 	private String getExpendFilename(String filepath) {
 		String expendFilename = "";
 		String[] temp = filepath.split("\\.");
@@ -324,82 +463,49 @@ public class LZW extends Algorithm {
 
 	public void expend(String filepath) throws IOException {
 
-		// 编码表：数组下标为编码
-		// 建表方法：编码表中新的编码（编码序号加 1）对应的字符串 为
-		// 当前输入编码对应的字符串 加上 下一个输入编码对应的字符串的首字母
-		String[] st = new String[L];
-
-		// 初始化编码到字符串的编码表
-		int stIndex = 0;
-		for (stIndex = 0; stIndex < 128; stIndex++)
-			st[stIndex] = "" + (char) stIndex;
-		st[stIndex++] = " ";
-
-		FileInputStream is = new FileInputStream(filepath);
-		BufferedInputStream in = new BufferedInputStream(is);
-		BufferedWriter out = new BufferedWriter(
-				new OutputStreamWriter(new FileOutputStream(getExpendFilename(filepath))));
-
-		long byteNum = is.available();
-		long index = 0;
-		int code = 0; // 前瞻字符（对于当前编码的下一个编码对应字符串的首字符）所在字符串的编码
-		String val = "";  // 当前读取的编码的对应字符串
-		int len = 0;
-
-		boolean firstCode = true;
-
-		out: while (true) {
-			byte[] bytes = new byte[1024 * 1024];
-			in.read(bytes);
-			for (int i = 0; i < bytes.length; i++) {
-				for (int j = 1; j >= 0; j--) {
-					code <<= 4;
-					code |= (bytes[i] >> 4 * j) & 0xf;
-					len += 4;
-					// 编码长度为 codeLen，所以 len 与 codeLen 相当时，就读取到了一个编码
-					if (len == codeLen) {
-						if (firstCode){
-							// 第一次要额外读取要读取一个编码作为当前的编码
-							val = st[code];
-							firstCode = false;
-						} else {
-							// 编码对应的字符串输出到文件中
-							for (int k = 0; k < val.length(); k++)
-								out.write(val.charAt(k));
-
-							// 找到前瞻字符所在的字符串
-							String s = st[code];
-							// 当前需要存储到编码表的编码 stIndex 和 刚读取到的下一个编码 nextCode 相同
-							// 此时因为 stIndex 在符号表中还没有值，所以 s 为空
-							// s 就变为当前编码的字符串加上此字符串的首字符
-							if (stIndex == code)
-								s = val + val.charAt(0);
-							// 下一个编码对应的字符串是 当前字符串 加上 前瞻字符
-							if (stIndex < L)
-								st[stIndex++] = val + s.charAt(0);
-
-							// 当前编码的字符串 更新为 下一个编码的字符串
-							val = s;
-
-						}
-						code = 0;
-						len = 0;
-					}
-				}
+		long fileLen = new File(filepath).length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+		ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
 
-				index++;
-				if (index == byteNum) {
-					for (int k = 0; k < val.length(); k++)
-						out.write(val.charAt(k));
-					break out;
-				}
+		int maxBits = in.read();
+		int blockSize = in.readInt();
+		if (maxBits < MIN_BITS || maxBits > MAX_BITS) {
+			in.close();
+			out.close();
+			throw new IOException("不支持的 lzw 文件格式: " + filepath);
+		}
+		this.maxBits = maxBits;
+
+		if (blockSize == 0) {
+			// 解码结果分段写出，缓冲区重复使用
+			BitReader reader = new BitReader(in);
+			Decoder decoder = new Decoder(maxBits);
+			CompressResult text = new CompressResult(2 * OUTPUT_SIZE);
+			long bitNum = 8 * (fileLen - 5);
+			boolean more = true;
+			while (more) {
+				more = decoder.decode(reader, bitNum, text, OUTPUT_SIZE);
+				out.write(text.getBytes(), 0, text.getByteLen());
+				text.clear();
 			}
+		} else {
+			expendBlocks(in, out);
 		}
-		in.close();
 
-		out.flush();
+		in.close();
 		out.close();
 
 	}
 
+	private void expendBlocks(DataInputStream in, ChannelOutput out) throws IOException {
+		ParallelCoder.pipeline(threadNum, block -> {
+			int len = in.readInt();
+			if (len == 0)
+				return null;
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return () -> expendBlock(bytes, len);
+		}, text -> out.write(text.getBytes(), 0, text.getByteLen()));
+	}
+
 }
@@ -0,0 +1,89 @@
+package algorithm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// 以内存映射的方式读取整个文件，编码器直接扫描映射的内存，不需要先读取到 byte[] 中
+// 单个映射不能超过 2 GB，所以文件按 WINDOW_SIZE 字节分为若干个窗口，每个窗口映射一次，
+// 文件大小由 FileChannel 得到，不依赖 InputStream.available()
+// 读取时只使用绝对位置，不改变缓冲区的 position，所以多个线程可以同时读取同一个文件的不相交的区间
+public class MappedInput implements Closeable {
+
+	private static final int WINDOW_BITS = 30;
+
+	public static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+
+	private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+
+	private RandomAccessFile file;
+
+	private FileChannel channel;
+
+	private long size;
+
+	private MappedByteBuffer[] windows;
+
+	public MappedInput(String filepath) throws IOException {
+		file = new RandomAccessFile(filepath, "r");
+		channel = file.getChannel();
+		size = channel.size();
+
+		int windowNum = (int) ((size + WINDOW_SIZE - 1) >>> WINDOW_BITS);
+		windows = new MappedByteBuffer[windowNum];
+		for (int i = 0; i < windowNum; i++) {
+			long pos = (long) i << WINDOW_BITS;
+			windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW_SIZE, size - pos));
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public int getWindowNum() {
+		return windows.length;
+	}
+
+	// 第 i 个窗口，对应文件中 [i * WINDOW_SIZE, i * WINDOW_SIZE + limit) 的字节
+	public ByteBuffer getWindow(int i) {
+		return windows[i];
+	}
+
+	// 文件中第 pos 个字节
+	public byte get(long pos) {
+		return windows[(int) (pos >>> WINDOW_BITS)].get((int) (pos & WINDOW_MASK));
+	}
+
+	// 文件中 [pos, pos + len) 的只读视图，在同一个窗口中时不复制数据，跨越窗口时单独映射这个区间
+	public ByteBuffer slice(long pos, int len) throws IOException {
+		int window = (int) (pos >>> WINDOW_BITS);
+		int off = (int) (pos & WINDOW_MASK);
+		if (off + len <= WINDOW_SIZE)
+			return windows[window].slice(off, len);
+		return channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+	}
+
+	// 把文件中 [pos, pos + len) 的字节复制到 dst[off] 开始的位置
+	public void read(long pos, byte[] dst, int off, int len) {
+		while (len > 0) {
+			int window = (int) (pos >>> WINDOW_BITS);
+			int start = (int) (pos & WINDOW_MASK);
+			int n = Math.min(len, windows[window].limit() - start);
+			windows[window].get(start, dst, off, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+
+}
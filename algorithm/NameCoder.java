@@ -0,0 +1,289 @@
+package algorithm;
+
+import java.util.Arrays;
+
+import pojo.CompressResult;
+
+// read 名称的分词编码
+// 名称按分隔符切分为若干个字段，每个字段和它之后的分隔符为一个 token，
+// 与上一条名称同一位置的 token 比较，按以下方式之一编码：
+//   MATCH：与上一条名称的 token 相同
+//   DELTA：数字字段，比上一条名称的值大 1 ~ 255，只保存差值
+//   NUM：数字字段，保存 32 位的值和分隔符
+//   STRING：其他字段，保存字符数（变长整数）、字符和分隔符，字符中可以有 0
+// 名称结束时编码一个 END
+// 所有数据都使用 RangeEncoder 编码，每个 token 位置的类型、差值、数值、字符、分隔符使用各自的概率，
+// Illumina 的名称中大部分字段与上一条相同，坐标只有很小的增量，所以每条名称只需要几个字节
+public class NameCoder {
+
+	private static final int MATCH = 0;
+	private static final int DELTA = 1;
+	private static final int NUM = 2;
+	private static final int STRING = 3;
+	private static final int END = 4;
+
+	// token 位置超过 MAX_TOKENS 时使用最后一个位置的概率
+	private static final int MAX_TOKENS = 32;
+
+	// 每个 token 位置的概率种类：类型、差值、数值的 4 个字节、字符、分隔符、字符数
+	private static final int TYPE_PROBS = 0;
+	private static final int DELTA_PROBS = 1;
+	private static final int NUM_PROBS = 2;
+	private static final int STRING_PROBS = 6;
+	private static final int DELIM_PROBS = 7;
+	private static final int LEN_PROBS = 8;
+	private static final int KINDS = 9;
+
+	// 名称长度的上限，与 mix 容器中 24 位的长度相同，数据损坏时字符数超过上限则停止解码
+	private static final int MAX_LEN = 0xffffff;
+
+	private static final String DELIMS = ":_/ #.-|=,";
+
+	private short[] probs = new short[MAX_TOKENS * KINDS * 256];
+
+	// 当前名称和上一条名称的 token，每条名称结束后交换，只在名称更长时扩大，
+	// 所以每条名称的编码、解码都不需要分配内存
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int[] delims = new int[16]; // 0 表示没有分隔符
+	private long[] nums = new long[16]; // -1 表示不是数字字段
+
+	private int[] prevStarts = new int[16];
+	private int[] prevEnds = new int[16];
+	private int[] prevDelims = new int[16];
+	private long[] prevNums = new long[16];
+	private int tokenNum;
+
+	// 上一条名称
+	private byte[] prevName = new byte[256];
+	private int prevLen;
+
+	private byte[] digits = new byte[20]; // 解码时数字的十进制字符
+
+	private static final boolean[] IS_DELIM = new boolean[256];
+
+	static {
+		for (int i = 0; i < DELIMS.length(); i++)
+			IS_DELIM[DELIMS.charAt(i)] = true;
+	}
+
+	public NameCoder() {
+		Arrays.fill(probs, (short) RangeEncoder.PROB_INIT);
+	}
+
+	// 概率在 probs 中的起始位置
+	private static int context(int pos, int kind) {
+		return (Math.min(pos, MAX_TOKENS - 1) * KINDS + kind) << 8;
+	}
+
+	// 数字字段 bytes[start, end) 的值，不是数字字段时返回 -1，前导 0 的字段按字符串处理，保证还原后相同
+	private static long number(byte[] bytes, int start, int end) {
+		int len = end - start;
+		if (len == 0 || len > 9 || (len > 1 && bytes[start] == '0'))
+			return -1;
+		long v = 0;
+		for (int i = start; i < end; i++) {
+			int c = bytes[i];
+			if (c < '0' || c > '9')
+				return -1;
+			v = v * 10 + (c - '0');
+		}
+		return v;
+	}
+
+	// 按 8 位二叉树编码一个字节
+	private void encodeByte(RangeEncoder encoder, int base, int b) {
+		int node = 1;
+		for (int i = 7; i >= 0; i--) {
+			int bit = (b >>> i) & 1;
+			encoder.encodeBit(probs, base + node, bit);
+			node = (node << 1) | bit;
+		}
+	}
+
+	private int decodeByte(RangeDecoder decoder, int base) {
+		int node = 1;
+		for (int i = 0; i < 8; i++)
+			node = (node << 1) | decoder.decodeBit(probs, base + node);
+		return node & 0xff;
+	}
+
+	// 变长整数，每字节 7 位，最高位为 1 表示还有后续字节
+	private void encodeLen(RangeEncoder encoder, int base, int v) {
+		while (v >= 0x80) {
+			encodeByte(encoder, base, (v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		encodeByte(encoder, base, v);
+	}
+
+	// 数据损坏时返回 -1
+	private int decodeLen(RangeDecoder decoder, int base) {
+		int v = 0;
+		for (int shift = 0; shift < 28; shift += 7) {
+			int b = decodeByte(decoder, base);
+			v |= (b & 0x7f) << shift;
+			if (b < 0x80)
+				return v <= MAX_LEN ? v : -1;
+		}
+		return -1;
+	}
+
+	// 保证当前名称的 token 数组至少能保存 n 个 token
+	private void ensureTokens(int n) {
+		if (n <= starts.length)
+			return;
+		int capacity = Math.max(n, 2 * starts.length);
+		starts = Arrays.copyOf(starts, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+		delims = Arrays.copyOf(delims, capacity);
+		nums = Arrays.copyOf(nums, capacity);
+	}
+
+	// 当前名称 bytes[off, off + len) 成为上一条名称，token 数组交换
+	private void finishName(byte[] bytes, int off, int len, int n) {
+		if (len > prevName.length)
+			prevName = new byte[Math.max(len, 2 * prevName.length)];
+		System.arraycopy(bytes, off, prevName, 0, len);
+		prevLen = len;
+		tokenNum = n;
+
+		int[] t = prevStarts;
+		prevStarts = starts;
+		starts = t;
+		t = prevEnds;
+		prevEnds = ends;
+		ends = t;
+		t = prevDelims;
+		prevDelims = delims;
+		delims = t;
+		long[] v = prevNums;
+		prevNums = nums;
+		nums = v;
+	}
+
+	// 切分 bytes[off, off + len)，返回 token 个数，字段相对 off 的起止位置和分隔符写入 starts、ends、delims
+	private static int tokenize(byte[] bytes, int off, int len, int[] starts, int[] ends, int[] delims) {
+		int n = 0;
+		int begin = 0;
+		for (int i = 0; i <= len; i++) {
+			if (i == len || IS_DELIM[bytes[off + i] & 0xff]) {
+				starts[n] = begin;
+				ends[n] = i;
+				delims[n] = i == len ? 0 : bytes[off + i] & 0xff;
+				n++;
+				begin = i + 1;
+			}
+		}
+		return n;
+	}
+
+	// 编码一条名称 bytes[off, off + len)
+	public void encode(RangeEncoder encoder, byte[] bytes, int off, int len) {
+		ensureTokens(len + 1);
+		int n = tokenize(bytes, off, len, starts, ends, delims);
+
+		for (int i = 0; i < n; i++) {
+			int start = off + starts[i];
+			int end = off + ends[i];
+			int delim = delims[i];
+			nums[i] = number(bytes, start, end);
+
+			boolean hasPrev = i < tokenNum && delim == prevDelims[i];
+			int type;
+			if (hasPrev && Arrays.equals(bytes, start, end, prevName, prevStarts[i], prevEnds[i]))
+				type = MATCH;
+			else if (hasPrev && nums[i] >= 0 && prevNums[i] >= 0 && nums[i] - prevNums[i] > 0
+					&& nums[i] - prevNums[i] < 256)
+				type = DELTA;
+			else if (nums[i] >= 0)
+				type = NUM;
+			else
+				type = STRING;
+
+			encodeByte(encoder, context(i, TYPE_PROBS), type);
+
+			if (type == DELTA)
+				encodeByte(encoder, context(i, DELTA_PROBS), (int) (nums[i] - prevNums[i]));
+
+			if (type == NUM) {
+				for (int k = 0; k < 4; k++)
+					encodeByte(encoder, context(i, NUM_PROBS + k), (int) (nums[i] >>> (24 - 8 * k)));
+				encodeByte(encoder, context(i, DELIM_PROBS), delim);
+			}
+
+			if (type == STRING) {
+				encodeLen(encoder, context(i, LEN_PROBS), end - start);
+				for (int k = start; k < end; k++)
+					encodeByte(encoder, context(i, STRING_PROBS), bytes[k] & 0xff);
+				encodeByte(encoder, context(i, DELIM_PROBS), delim);
+			}
+		}
+		encodeByte(encoder, context(n, TYPE_PROBS), END);
+
+		finishName(bytes, off, len, n);
+	}
+
+	// 十进制写入数字
+	private void writeNumber(CompressResult name, long v) {
+		int i = digits.length;
+		do {
+			digits[--i] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v > 0);
+		name.write(digits, i, digits.length - i);
+	}
+
+	// 解码一条名称，追加到 name 的末尾，返回名称的字节数
+	public int decode(RangeDecoder decoder, CompressResult name) {
+		int base = name.getByteLen();
+
+		int n = 0;
+		while (true) {
+			int type = decodeByte(decoder, context(n, TYPE_PROBS));
+			// 数据损坏时 token 数可能超过名称长度的上限
+			if (type == END || n > 0xffff)
+				break;
+
+			ensureTokens(n + 1);
+			starts[n] = name.getByteLen() - base;
+			int delim;
+			if (type == MATCH) {
+				if (n >= tokenNum)
+					break;
+				name.write(prevName, prevStarts[n], prevEnds[n] - prevStarts[n]);
+				delim = prevDelims[n];
+			} else if (type == DELTA) {
+				if (n >= tokenNum)
+					break;
+				writeNumber(name, prevNums[n] + decodeByte(decoder, context(n, DELTA_PROBS)));
+				delim = prevDelims[n];
+			} else if (type == NUM) {
+				long v = 0;
+				for (int k = 0; k < 4; k++)
+					v = (v << 8) | decodeByte(decoder, context(n, NUM_PROBS + k));
+				writeNumber(name, v);
+				delim = decodeByte(decoder, context(n, DELIM_PROBS));
+			} else {
+				int len = decodeLen(decoder, context(n, LEN_PROBS));
+				if (len < 0 || name.getByteLen() - base + len > MAX_LEN)
+					break;
+				for (int k = 0; k < len; k++)
+					name.write(decodeByte(decoder, context(n, STRING_PROBS)));
+				delim = decodeByte(decoder, context(n, DELIM_PROBS));
+			}
+			ends[n] = name.getByteLen() - base;
+			delims[n] = delim;
+			nums[n] = number(name.getBytes(), base + starts[n], base + ends[n]);
+			n++;
+
+			if (delim != 0)
+				name.write(delim);
+		}
+
+		int len = name.getByteLen() - base;
+		finishName(name.getBytes(), base, len, n);
+		return len;
+	}
+
+}
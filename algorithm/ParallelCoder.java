@@ -0,0 +1,166 @@
+package algorithm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import pojo.CompressResult;
+
+// 使用范式编码对整个文件分块并行编码、解码
+// 文件被切分为 CHUNK_SIZE 字节的块，每块使用相同的编码表在线程池中独立编码，
+// 每块写入：原始字节数（32 位）+ 编码后的 bit 数（32 位）+ 编码数据，原始字节数为 0 表示结束，
+// 块的边界都记录在文件中，所以解码时每块也可以独立地并行解码
+// 编码时输入文件是内存映射的，每个任务直接读取自己的块，不需要先复制到 byte[] 中
+//
+// pipeline 是所有分块压缩、解压共用的并行流程：块按顺序读入，在线程池中并行处理，结果按块的顺序写出
+public class ParallelCoder {
+
+	public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+	// 由第 block 个块的输入生成处理它的任务，没有更多的块时返回 null，只在调用 pipeline 的线程中执行
+	public interface BlockSource<T> {
+		Callable<T> next(int block) throws IOException;
+	}
+
+	// 按块的顺序接收任务的结果，只在调用 pipeline 的线程中执行
+	public interface BlockSink<T> {
+		void accept(T result) throws IOException;
+	}
+
+	// 在 threadNum 个线程中并行执行 source 生成的任务，结果按块的顺序交给 sink，
+	// 正在处理的块最多为 2 * threadNum 个，超过时先等待并写出最早的块，
+	// 所以内存占用只和块大小、线程数有关，与文件大小无关
+	public static <T> void pipeline(int threadNum, BlockSource<T> source, BlockSink<T> sink) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threadNum);
+		Deque<Future<T>> futures = new ArrayDeque<>();
+
+		try {
+			for (int block = 0;; block++) {
+				Callable<T> task = source.next(block);
+				if (task == null)
+					break;
+
+				futures.add(pool.submit(task));
+				if (futures.size() >= 2 * threadNum)
+					sink.accept(get(futures.poll()));
+			}
+			while (!futures.isEmpty())
+				sink.accept(get(futures.poll()));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	// 等待任务结束，任务中抛出的 IOException 原样抛出
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause instanceof RuntimeException && cause.getCause() != null)
+				cause = cause.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	// 块头中的 32 位整数，高位在前
+	public static void writeInt(CompressResult out, int v) {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+
+	public static int readInt(byte[] bytes, int off) {
+		return ((bytes[off] & 0xff) << 24) | ((bytes[off + 1] & 0xff) << 16)
+				| ((bytes[off + 2] & 0xff) << 8) | (bytes[off + 3] & 0xff);
+	}
+
+	private static CompressResult encodeChunk(CanonicalCode canonicalCode, ByteBuffer bytes, int len)
+			throws IOException {
+		int[] codes = new int[256];
+		int[] lens = new int[256];
+		for (int c = 0; c < 256; c++) {
+			codes[c] = canonicalCode.getCode(c);
+			lens[c] = canonicalCode.getLen(c);
+		}
+
+		CompressResult result = new CompressResult(len);
+		BitWriter writer = new BitWriter(result);
+		for (int i = 0; i < len; i++) {
+			int c = bytes.get(i) & 0xff;
+			writer.write(codes[c], lens[c]);
+		}
+		writer.flush();
+		return result;
+	}
+
+	private static byte[] decodeChunk(CanonicalCode canonicalCode, byte[] bytes, int bitLen, int len)
+			throws IOException {
+		byte[] text = new byte[len];
+		BitReader in = new BitReader(bytes, 0, bytes.length);
+		// 数据损坏或被截断时解码出的字符数少于原始字节数
+		if (canonicalCode.decode(in, bitLen, text, 0, len) != len)
+			throw new IOException("数据长度错误");
+		return text;
+	}
+
+	public static void encode(CanonicalCode canonicalCode, MappedInput in, OutputStream os, int threadNum)
+			throws IOException {
+
+		DataOutputStream out = new DataOutputStream(os);
+		Deque<Integer> lens = new ArrayDeque<>();
+
+		pipeline(threadNum, block -> {
+			long pos = (long) block * CHUNK_SIZE;
+			if (pos >= in.size())
+				return null;
+			int len = (int) Math.min(CHUNK_SIZE, in.size() - pos);
+			ByteBuffer bytes = in.slice(pos, len);
+			lens.add(len);
+			return () -> encodeChunk(canonicalCode, bytes, len);
+		}, result -> {
+			out.writeInt(lens.poll());
+			out.writeInt(result.getBitLen());
+			out.write(result.getBytes(), 0, result.getByteLen());
+		});
+
+		// 结束标志
+		out.writeInt(0);
+		out.flush();
+	}
+
+	public static void decode(CanonicalCode canonicalCode, InputStream is, OutputStream out, int threadNum)
+			throws IOException {
+
+		DataInputStream in = new DataInputStream(is);
+
+		pipeline(threadNum, block -> {
+			int len = in.readInt();
+			if (len == 0)
+				return null;
+			int bitLen = in.readInt();
+			byte[] bytes = new byte[(bitLen + 7) / 8];
+			in.readFully(bytes);
+			return () -> decodeChunk(canonicalCode, bytes, bitLen, len);
+		}, out::write);
+
+		out.flush();
+	}
+
+}
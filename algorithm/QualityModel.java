@@ -0,0 +1,130 @@
+package algorithm;
+
+import java.util.Arrays;
+
+import pojo.CompressResult;
+
+// 质量值的上下文模型，配合 RangeEncoder / RangeDecoder 做自适应算术编码
+// 质量值先按字符表转换为序号，序号用 bits 位的二叉树逐位编码，
+// 每一位的概率由上下文决定：前一个质量值、前第二个质量值、在 read 中的位置区间，
+// read 开头没有前面的质量值时使用额外的序号 symbolNum
+//
+// 字符表格式：字符个数（16 位）+ 每个字符（8 位）
+public class QualityModel {
+
+	public static final int POS_BUCKETS = 8;
+
+	private static final int POS_SHIFT = 4; // 每 16 个位置为一个区间
+
+	// 概率表的最大长度，超过时不再使用前第二个质量值作为上下文
+	private static final int MAX_PROBS = 1 << 22;
+
+	private int[] symbols; // 序号对应的字符
+
+	private int[] ranks = new int[256]; // 字符对应的序号
+
+	private int bits; // 序号的位数
+
+	private int q2Num; // 前第二个质量值的取值个数，为 1 时不使用
+
+	private short[] probs;
+
+	public QualityModel(int[] symbols) {
+		this.symbols = symbols;
+		for (int i = 0; i < symbols.length; i++)
+			ranks[symbols[i]] = i;
+
+		bits = 1;
+		while ((1 << bits) < symbols.length)
+			bits++;
+
+		int qNum = symbols.length + 1;
+		q2Num = (long) qNum * qNum * POS_BUCKETS << bits > MAX_PROBS ? 1 : qNum;
+		probs = new short[(qNum * q2Num * POS_BUCKETS) << bits];
+		Arrays.fill(probs, (short) RangeEncoder.PROB_INIT);
+	}
+
+	// 由字符频率建立模型，只包含出现过的字符
+	public static QualityModel build(long[] counts) {
+		int symbolNum = 0;
+		for (int c = 0; c < 256; c++)
+			if (counts[c] > 0)
+				symbolNum++;
+
+		int[] symbols = new int[symbolNum];
+		int index = 0;
+		for (int c = 0; c < 256; c++)
+			if (counts[c] > 0)
+				symbols[index++] = c;
+		return new QualityModel(symbols);
+	}
+
+	public int byteSize() {
+		return 2 + symbols.length;
+	}
+
+	public void write(CompressResult out) {
+		out.write(symbols.length >> 8);
+		out.write(symbols.length);
+		for (int c : symbols)
+			out.write(c);
+	}
+
+	public static QualityModel read(byte[] bytes, int off) {
+		int symbolNum = ((bytes[off] & 0xff) << 8) | (bytes[off + 1] & 0xff);
+		int[] symbols = new int[symbolNum];
+		for (int i = 0; i < symbolNum; i++)
+			symbols[i] = bytes[off + 2 + i] & 0xff;
+		return new QualityModel(symbols);
+	}
+
+	// 上下文对应的概率在 probs 中的起始位置
+	private int context(int q1, int q2, int pos) {
+		int bucket = Math.min(pos >> POS_SHIFT, POS_BUCKETS - 1);
+		if (q2Num == 1)
+			q2 = 0;
+		return ((q1 * q2Num + q2) * POS_BUCKETS + bucket) << bits;
+	}
+
+	// 编码一条 read 的质量值 bytes[off, off + len)
+	public void encode(RangeEncoder encoder, byte[] bytes, int off, int len) {
+		int q1 = symbols.length;
+		int q2 = symbols.length;
+		for (int i = 0; i < len; i++) {
+			int rank = ranks[bytes[off + i] & 0xff];
+			int base = context(q1, q2, i);
+
+			// 二叉树从高位到低位编码，node 为当前结点的编号
+			int node = 1;
+			for (int b = bits - 1; b >= 0; b--) {
+				int bit = (rank >>> b) & 1;
+				encoder.encodeBit(probs, base + node, bit);
+				node = (node << 1) | bit;
+			}
+
+			q2 = q1;
+			q1 = rank;
+		}
+	}
+
+	// 解码一条长度为 len 的 read 的质量值，写入 dst[off] 开始的位置
+	public void decode(RangeDecoder decoder, byte[] dst, int off, int len) {
+		int q1 = symbols.length;
+		int q2 = symbols.length;
+		for (int i = 0; i < len; i++) {
+			int base = context(q1, q2, i);
+
+			int node = 1;
+			for (int b = 0; b < bits; b++)
+				node = (node << 1) | decoder.decodeBit(probs, base + node);
+			int rank = node - (1 << bits);
+
+			// 数据损坏时序号可能超出字符表
+			dst[off + i] = (byte) symbols[Math.min(rank, symbols.length - 1)];
+
+			q2 = q1;
+			q1 = rank < symbols.length ? rank : symbols.length - 1;
+		}
+	}
+
+}
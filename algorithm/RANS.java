@@ -0,0 +1,398 @@
+package algorithm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import pojo.CompressResult;
+
+// 4 路交错的 rANS 编码（range asymmetric numeral systems）
+// 每个块统计一次字节频率，归一化为总和 2^PROB_BITS 的静态频率表，
+// 状态保存在 [L, 256 * L) 中，每次按字节输出或读入，
+// 第 i 个字节使用第 i % 4 个状态，4 个状态之间没有依赖，解码时可以交错执行，
+// 与哈夫曼编码不同，每个字符的码长不必是整数位，偏斜的分布更接近熵
+//
+// 块格式：原始字节数（32 位）+ 字符个数（16 位）+ 每个字符（8 位）和频率（16 位）
+// + 编码数据字节数（32 位）+ 编码数据（4 个状态的初始值 + 按解码顺序排列的字节）
+//
+// .rans 文件：若干个块，每块为块字节数（32 位）+ 块数据，块字节数为 0 表示结束
+public class RANS extends Algorithm {
+
+	public static final int PROB_BITS = 12;
+
+	public static final int PROB_SCALE = 1 << PROB_BITS;
+
+	private static final int PROB_MASK = PROB_SCALE - 1;
+
+	// 状态的下界
+	private static final int L = 1 << 23;
+
+	private static final int WAYS = 4;
+
+	// 单独压缩文件时每块的字节数
+	public static final int BLOCK_SIZE = 1024 * 1024;
+
+	private int threadNum = Runtime.getRuntime().availableProcessors();
+
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
+	}
+
+	// 把字符频率归一化为总和 PROB_SCALE 的频率，出现过的字符频率至少为 1
+	private static int[] normalize(long[] counts, long total) {
+		int[] freqs = new int[256];
+		if (total == 0)
+			return freqs;
+
+		int sum = 0;
+		int max = 0;
+		for (int c = 0; c < 256; c++) {
+			if (counts[c] > 0) {
+				freqs[c] = (int) Math.max(1, counts[c] * PROB_SCALE / total);
+				sum += freqs[c];
+				if (counts[c] > counts[max])
+					max = c;
+			}
+		}
+
+		// 向下取整后总和偏小，差值加到最常见的字符上
+		if (sum < PROB_SCALE)
+			freqs[max] += PROB_SCALE - sum;
+
+		// 频率至少为 1 时总和可能偏大，从频率最大的字符上依次减去
+		while (sum > PROB_SCALE) {
+			int m = 0;
+			for (int c = 1; c < 256; c++)
+				if (freqs[c] > freqs[m])
+					m = c;
+			freqs[m]--;
+			sum--;
+		}
+
+		return freqs;
+	}
+
+	// 编码 src 中 [off, off + len) 的字节，块数据追加到 out 的末尾
+	public static void encode(byte[] src, int off, int len, CompressResult out) {
+
+		long[] counts = new long[256];
+		Histogram.count(src, off, len, counts);
+		int[] freqs = normalize(counts, len);
+
+		// 写入频率表
+		int symbolNum = 0;
+		for (int c = 0; c < 256; c++)
+			if (freqs[c] > 0)
+				symbolNum++;
+
+		ParallelCoder.writeInt(out, len);
+		out.write(symbolNum >> 8);
+		out.write(symbolNum);
+
+		// 编码 x -> (x / f) * PROB_SCALE + x % f + start 中的除法换成乘以 f 的倒数（与 ryg_rans 的 RansEncSymbol 相同）：
+		// q = x / f = (x * rcpFreq) >>> rcpShift，结果为 x + bias + q * (PROB_SCALE - f)，
+		// 状态小于 2^31，rcpFreq 小于 2^32，乘积不超过 long 的范围
+		long[] xMax = new long[256];
+		long[] rcpFreqs = new long[256];
+		int[] rcpShifts = new int[256];
+		int[] biases = new int[256];
+		int[] cmplFreqs = new int[256];
+		int start = 0;
+		for (int c = 0; c < 256; c++) {
+			int f = freqs[c];
+			if (f > 0) {
+				out.write(c);
+				out.write(f >> 8);
+				out.write(f);
+			}
+			// 编码前状态不小于 xMax 时需要先输出低位字节，保证编码后的状态小于 256 * L
+			xMax[c] = ((long) (L >> PROB_BITS) << 8) * f;
+			cmplFreqs[c] = PROB_SCALE - f;
+			if (f == 1) {
+				// q = x - 1，bias 中补上多减去的部分
+				rcpFreqs[c] = 0xffffffffL;
+				rcpShifts[c] = 32;
+				biases[c] = start + PROB_SCALE - 1;
+			} else if (f > 1) {
+				int shift = 32 - Integer.numberOfLeadingZeros(f - 1); // 2^shift >= f 的最小 shift
+				rcpFreqs[c] = ((1L << (shift + 31)) + f - 1) / f;
+				rcpShifts[c] = shift - 1 + 32;
+				biases[c] = start;
+			}
+			start += f;
+		}
+
+		// rANS 是后进先出的，从后往前编码，字节从缓冲区的末尾向前写，
+		// 每个字符最多输出 2 个字节
+		byte[] buf = new byte[2 * len + 4 * WAYS];
+		int pos = buf.length;
+
+		int[] states = new int[WAYS];
+		for (int j = 0; j < WAYS; j++)
+			states[j] = L;
+
+		// 最后不足 4 个字节的部分先单独编码
+		int i = len - 1;
+		for (; (i & (WAYS - 1)) != WAYS - 1; i--) {
+			int c = src[off + i] & 0xff;
+			int j = i & (WAYS - 1);
+			int x = states[j];
+			while (x >= xMax[c]) {
+				buf[--pos] = (byte) x;
+				x >>>= 8;
+			}
+			states[j] = x + biases[c] + (int) ((x * rcpFreqs[c]) >>> rcpShifts[c]) * cmplFreqs[c];
+		}
+
+		// 之后每次编码 4 个字节，4 个状态放在局部变量中
+		int x0 = states[0];
+		int x1 = states[1];
+		int x2 = states[2];
+		int x3 = states[3];
+		int c;
+		for (i -= WAYS - 1; i >= 0; i -= WAYS) {
+			c = src[off + i + 3] & 0xff;
+			while (x3 >= xMax[c]) {
+				buf[--pos] = (byte) x3;
+				x3 >>>= 8;
+			}
+			x3 += biases[c] + (int) ((x3 * rcpFreqs[c]) >>> rcpShifts[c]) * cmplFreqs[c];
+
+			c = src[off + i + 2] & 0xff;
+			while (x2 >= xMax[c]) {
+				buf[--pos] = (byte) x2;
+				x2 >>>= 8;
+			}
+			x2 += biases[c] + (int) ((x2 * rcpFreqs[c]) >>> rcpShifts[c]) * cmplFreqs[c];
+
+			c = src[off + i + 1] & 0xff;
+			while (x1 >= xMax[c]) {
+				buf[--pos] = (byte) x1;
+				x1 >>>= 8;
+			}
+			x1 += biases[c] + (int) ((x1 * rcpFreqs[c]) >>> rcpShifts[c]) * cmplFreqs[c];
+
+			c = src[off + i] & 0xff;
+			while (x0 >= xMax[c]) {
+				buf[--pos] = (byte) x0;
+				x0 >>>= 8;
+			}
+			x0 += biases[c] + (int) ((x0 * rcpFreqs[c]) >>> rcpShifts[c]) * cmplFreqs[c];
+		}
+		states[0] = x0;
+		states[1] = x1;
+		states[2] = x2;
+		states[3] = x3;
+
+		// 最后写入状态，解码时最先读到第 0 个状态
+		for (int j = WAYS - 1; j >= 0; j--) {
+			int x = states[j];
+			for (int k = 0; k < 4; k++) {
+				buf[--pos] = (byte) x;
+				x >>>= 8;
+			}
+		}
+
+		ParallelCoder.writeInt(out, buf.length - pos);
+		out.write(buf, pos, buf.length - pos);
+	}
+
+	// 读取块的原始字节数
+	public static int decodedLen(byte[] src, int off) {
+		return ParallelCoder.readInt(src, off);
+	}
+
+	// 解码从 src[off] 开始的块，写入 dst[dstOff] 开始的位置，返回块结束的位置
+	public static int decode(byte[] src, int off, byte[] dst, int dstOff) throws IOException {
+
+		// 截断或损坏的块在读取之前检查长度，不会越界
+		if (off + 6 > src.length)
+			throw new IOException("rANS 数据错误");
+		int len = ParallelCoder.readInt(src, off);
+		int symbolNum = ((src[off + 4] & 0xff) << 8) | (src[off + 5] & 0xff);
+		int index = off + 6;
+		if (len < 0 || symbolNum > 256 || index + 3 * symbolNum + 4 > src.length)
+			throw new IOException("rANS 数据错误");
+
+		// 由频率表建立解码表，下标为状态的低 PROB_BITS 位
+		int[] freqs = new int[256];
+		int[] starts = new int[256];
+		byte[] slots = new byte[PROB_SCALE];
+		int start = 0;
+		for (int i = 0; i < symbolNum; i++) {
+			int c = src[index] & 0xff;
+			int f = ((src[index + 1] & 0xff) << 8) | (src[index + 2] & 0xff);
+			index += 3;
+			if (start + f > PROB_SCALE)
+				throw new IOException("rANS 频率表错误");
+			freqs[c] = f;
+			starts[c] = start;
+			for (int k = start; k < start + f; k++)
+				slots[k] = (byte) c;
+			start += f;
+		}
+		if (len > 0 && start != PROB_SCALE)
+			throw new IOException("rANS 频率表错误");
+
+		int dataLen = ParallelCoder.readInt(src, index);
+		index += 4;
+		int end = index + dataLen;
+		if (dataLen < 0 || end > src.length || end < index)
+			throw new IOException("rANS 数据错误");
+		if (len == 0)
+			return end;
+		if (dataLen < 4 * WAYS)
+			throw new IOException("rANS 数据错误");
+
+		int x0 = ParallelCoder.readInt(src, index);
+		int x1 = ParallelCoder.readInt(src, index + 4);
+		int x2 = ParallelCoder.readInt(src, index + 8);
+		int x3 = ParallelCoder.readInt(src, index + 12);
+		int p = index + 16;
+		// 状态在 [L, 2^31) 中时，每次解码后的状态至少为 L >> PROB_BITS，最多读入 2 个字节
+		if (x0 < L || x1 < L || x2 < L || x3 < L)
+			throw new IOException("rANS 数据错误");
+
+		// 4 个状态依次解码，互不依赖
+		// 每个状态每次最多读入 2 个字节，剩下的数据足够时不需要检查读取的位置
+		int i = 0;
+		int c;
+		for (; i + WAYS <= len && p <= end - 2 * WAYS; i += WAYS) {
+			c = slots[x0 & PROB_MASK] & 0xff;
+			dst[dstOff + i] = (byte) c;
+			x0 = freqs[c] * (x0 >>> PROB_BITS) + (x0 & PROB_MASK) - starts[c];
+
+			c = slots[x1 & PROB_MASK] & 0xff;
+			dst[dstOff + i + 1] = (byte) c;
+			x1 = freqs[c] * (x1 >>> PROB_BITS) + (x1 & PROB_MASK) - starts[c];
+
+			c = slots[x2 & PROB_MASK] & 0xff;
+			dst[dstOff + i + 2] = (byte) c;
+			x2 = freqs[c] * (x2 >>> PROB_BITS) + (x2 & PROB_MASK) - starts[c];
+
+			c = slots[x3 & PROB_MASK] & 0xff;
+			dst[dstOff + i + 3] = (byte) c;
+			x3 = freqs[c] * (x3 >>> PROB_BITS) + (x3 & PROB_MASK) - starts[c];
+
+			// 状态小于 L 时读入字节，顺序与编码时输出的顺序相反
+			while (x0 < L)
+				x0 = (x0 << 8) | (src[p++] & 0xff);
+			while (x1 < L)
+				x1 = (x1 << 8) | (src[p++] & 0xff);
+			while (x2 < L)
+				x2 = (x2 << 8) | (src[p++] & 0xff);
+			while (x3 < L)
+				x3 = (x3 << 8) | (src[p++] & 0xff);
+		}
+
+		// 剩下的字节（包括数据接近末尾时）逐个解码，每次读入前检查位置
+		int[] states = { x0, x1, x2, x3 };
+		for (; i < len; i++) {
+			int j = i & (WAYS - 1);
+			int x = states[j];
+			c = slots[x & PROB_MASK] & 0xff;
+			dst[dstOff + i] = (byte) c;
+			x = freqs[c] * (x >>> PROB_BITS) + (x & PROB_MASK) - starts[c];
+			while (x < L) {
+				if (p == end)
+					throw new IOException("rANS 数据错误");
+				x = (x << 8) | (src[p++] & 0xff);
+			}
+			states[j] = x;
+		}
+
+		// 编码时状态的初始值为 L，正确的数据解码结束时 4 个状态都回到 L，并且正好读完所有数据
+		for (int x : states)
+			if (x != L)
+				throw new IOException("rANS 数据错误");
+		if (p != end)
+			throw new IOException("rANS 数据错误");
+		return end;
+	}
+
+	private static CompressResult encodeBlock(byte[] bytes, int len) {
+		CompressResult result = new CompressResult(len + 1024);
+		encode(bytes, 0, len, result);
+		return result;
+	}
+
+	private static byte[] decodeBlock(byte[] block) throws IOException {
+		byte[] text = new byte[decodedLen(block, 0)];
+		decode(block, 0, text, 0);
+		return text;
+	}
+
+	public void compress(String filepath) throws IOException {
+
+		// 获取压缩后的文件名
+		String compressFilename = "";
+		String[] t = filepath.split("\\.");
+		for (int i = 0; i < t.length - 1; i++) {
+			compressFilename += t[i];
+		}
+		compressFilename += ".rans";
+
+		InputStream in = new FileInputStream(filepath);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(compressFilename)));
+
+		ParallelCoder.pipeline(threadNum, block -> {
+			byte[] bytes = new byte[BLOCK_SIZE];
+			int len = in.readNBytes(bytes, 0, bytes.length);
+			if (len == 0)
+				return null;
+			return () -> encodeBlock(bytes, len);
+		}, result -> {
+			out.writeInt(result.getByteLen());
+			out.write(result.getBytes(), 0, result.getByteLen());
+		});
+
+		// 结束标志
+		out.writeInt(0);
+
+		in.close();
+		out.close();
+	}
+
+	private String getExpendFilename(String filepath) {
+		String expendFilename = "";
+		String[] temp = filepath.split("\\.");
+		for (int i = 0; i < temp.length - 1; i++) {
+			expendFilename += temp[i];
+		}
+
+		if (new File(expendFilename + ".fastq").exists()) {
+			int c = 1;
+			while (new File(expendFilename + c + ".fastq").exists()) {
+				c += 1;
+			}
+			expendFilename += c + ".fastq";
+		}
+		return expendFilename;
+	}
+
+	public void expend(String filepath) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filepath)));
+		ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
+
+		ParallelCoder.pipeline(threadNum, block -> {
+			int blockLen = in.readInt();
+			if (blockLen == 0)
+				return null;
+			byte[] bytes = new byte[blockLen];
+			in.readFully(bytes);
+			return () -> decodeBlock(bytes);
+		}, out::write);
+
+		in.close();
+		out.close();
+	}
+
+}
@@ -1,12 +1,10 @@
 package algorithm;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Arrays;
 
 public class RLE extends Algorithm {
 
@@ -16,82 +14,46 @@ public class RLE extends Algorithm {
 	private int neBitLen = 5; // 表示连续不相等字符串的长度的 bit 数
 	private int neLenMax = (int) Math.pow(2, neBitLen - 1) - 1;
 
-	private int buffer;
-	private int len = 0;
+	private BitWriter writer;
 
-	private void writeCnt(boolean equal, int cnt, BufferedOutputStream out) throws IOException {
+	private void writeCnt(boolean equal, int cnt) throws IOException {
 
 		int bitLen = equal ? eBitLen : neBitLen;
 		int lenMax = equal ? eLenMax : neLenMax;
 
-		for (int i = 0; i < bitLen; i++) {
-			buffer <<= 1;
-			if (i == 0)
-				buffer |= equal ? 1 : 0;
-			else {
-				if (cnt > lenMax)
-					buffer |= 1;
-				else
-					buffer |= (cnt & (1 << (bitLen - 1 - i))) != 0 ? 1 : 0;
-			}
-			len++;
-			if (len == 8) {
-				out.write(buffer);
-				buffer = 0;
-				len = 0;
-			}
-		}
+		// 标志位，之后是长度，超过最大长度时写入最大长度
+		writer.write(equal ? 1 : 0, 1);
+		writer.write(Math.min(cnt, lenMax), bitLen - 1);
 	}
 
-	private void writeEqual(byte b, int cnt, BufferedOutputStream out) throws IOException {
+	private void writeEqual(byte b, int cnt) throws IOException {
 
 		while (cnt > 0) {
 
-			writeCnt(true, cnt, out);
-
-			for (int i = 7; i >= 0; i--) {
-				buffer <<= 1;
-				buffer |= (b & (1 << i)) != 0 ? 1 : 0;
-				len++;
-				if (len == 8) {
-					out.write(buffer);
-					buffer = 0;
-					len = 0;
-				}
-			}
+			writeCnt(true, cnt);
+			writer.write(b, 8);
 
 			cnt -= eLenMax;
 		}
 
 	}
 
-	private void writeNotEqual(byte[] bytes, int cnt, BufferedOutputStream out) throws IOException {
+	private void writeNotEqual(byte[] bytes, int cnt) throws IOException {
 
 		int index = 0;
 		int maxSize = 0;
 
 		while (cnt > 0) {
 
-			writeCnt(false, cnt, out);
+			writeCnt(false, cnt);
 
 			if (cnt > neLenMax)
 				maxSize = neLenMax;
 			else
 				maxSize = cnt;
 
-			for (int i = 0; i < maxSize; i++) {
-				for (int j = 7; j >= 0; j--) {
-					buffer <<= 1;
-					len++;
-					buffer |= (bytes[index] & (1 << j)) != 0 ? 1 : 0;
-					if (len == 8) {
-						out.write(buffer);
-						buffer = 0;
-						len = 0;
-					}
-				}
-				index++;
-			}
+			for (int i = 0; i < maxSize; i++)
+				writer.write(bytes[index++], 8);
 
 			cnt -= neLenMax;
 		}
@@ -106,76 +68,72 @@ public class RLE extends Algorithm {
 			compressFilename += t[i];
 		compressFilename += ".rle";
 
-		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(compressFilename));
+		FileOutputStream out = new FileOutputStream(compressFilename);
+		writer = new BitWriter(out);
 
-		InputStream is = new FileInputStream(filepath);
-		BufferedInputStream in = new BufferedInputStream(is);
+		MappedInput in = new MappedInput(filepath);
+		long byteNum = in.size();
 
-		byte[] bytes = new byte[1024 * 1024];
-		long byteNum = is.available();
+		if (byteNum == 0) {
+			in.close();
+			out.close();
+			return;
+		}
 
-		long index = 0;
 		int cnt = 0;
 		boolean equal = false;
 
 		// 给 pre 变量提前读取一个字节
-		byte[] temp = new byte[1];
-		in.read(temp);
-		index++;
-		byte pre = temp[0];
+		byte pre = in.get(0);
 		byte now;
 
 		byte[] charBuffer = new byte[1024];
-		out: while (true) {
-			in.read(bytes);
-
-			for (int i = 0; i < bytes.length; i++) {
-				now = bytes[i];
-
-				cnt++;
-				if (pre != now) {
-					// 如果从连续相等中断，则保存前面连续相等字符串的数据
-					if (equal && cnt > 0) {
-						writeEqual(pre, cnt, out);
-						cnt = 0;
-					}
-
-					// 将不连续相等的字符保存
-					// 因为连续相等中断时，now 是连续相等字符串的最后一个字符，
-					// 所以此时不保存
-					if (!equal)
-						charBuffer[cnt - 1] = pre;
-
-					equal = false;
-				} else {
-					// 如果从不连续相等变为连续相等，则保存前面不连续相等字符串的数据
-					if (!equal && cnt - 1 > 0) {
-						writeNotEqual(charBuffer, cnt - 1, out);
-						charBuffer = new byte[1024];
-						cnt = 1;
-					}
-					equal = true;
+		for (long index = 1; index < byteNum; index++) {
+			now = in.get(index);
+
+			cnt++;
+			if (pre != now) {
+				// 如果从连续相等中断，则保存前面连续相等字符串的数据
+				if (equal && cnt > 0) {
+					writeEqual(pre, cnt);
+					cnt = 0;
 				}
 
-				pre = now;
-				index++;
-				if (index == byteNum) {
-					// 此时 now（或pre）变量的数据并没有经过程序的判断
-					if (cnt > 0)
-						cnt++;
-					if (equal)
-						writeEqual(pre, cnt, out);
-					else {
-						charBuffer[cnt - 1] = pre;
-						writeNotEqual(charBuffer, cnt, out);
-					}
-					break out;
+				// 将不连续相等的字符保存
+				// 因为连续相等中断时，now 是连续相等字符串的最后一个字符，
+				// 所以此时不保存
+				if (!equal) {
+					if (cnt > charBuffer.length)
+						charBuffer = Arrays.copyOf(charBuffer, 2 * charBuffer.length);
+					charBuffer[cnt - 1] = pre;
 				}
+
+				equal = false;
+			} else {
+				// 如果从不连续相等变为连续相等，则保存前面不连续相等字符串的数据
+				if (!equal && cnt - 1 > 0) {
+					writeNotEqual(charBuffer, cnt - 1);
+					cnt = 1;
+				}
+				equal = true;
 			}
+
+			pre = now;
 		}
 
-		if (len != 0)
-			out.write(buffer << 8 - len);
+		// 此时 pre 变量的数据并没有经过程序的判断，
+		// 连续相等刚刚中断时 cnt 为 0，pre 是一个新的不连续相等字符串
+		cnt++;
+		if (equal)
+			writeEqual(pre, cnt);
+		else {
+			if (cnt > charBuffer.length)
+				charBuffer = Arrays.copyOf(charBuffer, 2 * charBuffer.length);
+			charBuffer[cnt - 1] = pre;
+			writeNotEqual(charBuffer, cnt);
+		}
+
+		writer.flush();
 
 		in.close();
 		out.close();
@@ -200,84 +158,27 @@ public class RLE extends Algorithm {
 
 	public void expend(String filepath) throws IOException {
 
-		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(getExpendFilename(filepath)));
-
-		FileInputStream is = new FileInputStream(filepath);
-		int byteNum = is.available();
-		BufferedInputStream in = new BufferedInputStream(is);
-
-		byte[] bytes = new byte[1024 * 1024];
-		int index = 0;
-		boolean bit = false;
-
-		// 当前读取的状态
-		// 0 表示读取标志位，1 表示读取字符数，2 表示读取字符
-		int status = 0;  
-		boolean equal = false;
-		int cnt = 0;
-		int bitLen = 0;  // 所要读取的数据 bit 长度
-		int buffer = 0;
-
-		out: while (true) {
-			in.read(bytes);
-			for (int i = 0; i < bytes.length; i++) {
-				for (int j = 7; j >= 0; j--) {
-					bit = (bytes[i] & (1 << j)) != 0 ? true : false;
-
-					// 读取标志位
-					if (status == 0){
-						equal = bit;
-						bitLen = 0;
-						status = 1;
-						continue;
-					}
-
-					// 读取字符数
-					if (status == 1){
-						cnt <<= 1;
-						if (bit)
-							cnt |= 1;
-						bitLen ++;
-						if ((equal && bitLen == eBitLen - 1) || (!equal && bitLen == neBitLen - 1)){
-							bitLen = 0;
-							status = 2;
-							continue;
-						}	
-					}
-
-					// 读取字符
-					if (status == 2){
-						buffer <<= 1;
-						if (bit)
-							buffer |= 1;
-						
-						if (equal){
-							// 写入连续重复的字符
-							bitLen ++;
-							if (bitLen == 8){
-								for (int k = 0; k < cnt; k++) 
-									out.write(buffer);
-								bitLen *= cnt;
-							}
-						} else {
-							// 写入不连续重复的字符
-							bitLen ++;
-							if (bitLen > 0 && bitLen % 8 == 0)
-								out.write(buffer);
-						}
-						if (bitLen == 8 * cnt){
-							status = 0;
-							cnt = 0;
-							bitLen = 0;
-							continue;
-						}
-					}
-				}
-
-				index++;
-				if (index == byteNum) {
-					break out;
-				}
+		ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
+
+		long bitNum = new File(filepath).length() * 8;
+		BitReader in = new BitReader(new FileInputStream(filepath));
+
+		// 每段数据为：标志位 + 字符数 + 字符，
+		// 最短的一段也超过 8 位，而文件末尾补齐的位不足 8 位，
+		// 所以剩余的位数不足 8 位时说明已经读取完毕
+		while (bitNum - in.getBitPos() >= 8) {
+			boolean equal = in.read(1) == 1;
+			int cnt = in.read(equal ? eBitLen - 1 : neBitLen - 1);
+
+			if (equal) {
+				// 写入连续重复的字符
+				int b = in.read(8);
+				for (int k = 0; k < cnt; k++)
+					out.write(b);
+			} else {
+				// 写入不连续重复的字符
+				for (int k = 0; k < cnt; k++)
+					out.write(in.read(8));
 			}
 		}
 
@@ -0,0 +1,58 @@
+package algorithm;
+
+// 二进制自适应区间解码，与 RangeEncoder 对应
+public class RangeDecoder {
+
+	private byte[] bytes;
+
+	private int pos;
+
+	private int limit;
+
+	private int range = -1; // 无符号 32 位
+
+	private int code;
+
+	public RangeDecoder(byte[] bytes, int off, int len) {
+		this.bytes = bytes;
+		this.pos = off;
+		this.limit = off + len;
+		// 编码器输出的第一个字节总是 0
+		for (int i = 0; i < 5; i++)
+			code = (code << 8) | next();
+	}
+
+	// 数据结束后的部分用 0 补齐
+	private int next() {
+		return pos < limit ? bytes[pos++] & 0xff : 0;
+	}
+
+	// 解码一位，probs[i] 为这一位的概率，解码后更新
+	public int decodeBit(short[] probs, int i) {
+		int p = probs[i];
+		int bit = decode(p);
+		probs[i] = (short) RangeEncoder.update(p, bit);
+		return bit;
+	}
+
+	// 按概率 p 解码一位，不更新概率
+	public int decode(int p) {
+		int bound = (range >>> RangeEncoder.PROB_BITS) * p;
+		int bit;
+		// 无符号比较
+		if ((code ^ 0x80000000) < (bound ^ 0x80000000)) {
+			range = bound;
+			bit = 0;
+		} else {
+			code -= bound;
+			range -= bound;
+			bit = 1;
+		}
+		while ((range & 0xff000000) == 0) {
+			range <<= 8;
+			code = (code << 8) | next();
+		}
+		return bit;
+	}
+
+}
@@ -0,0 +1,82 @@
+package algorithm;
+
+import pojo.CompressResult;
+
+// 二进制自适应区间编码（与 LZMA 的区间编码器相同）
+// 每个 bit 的概率用 short 保存，表示该位为 0 的概率，范围是 (0, 2^PROB_BITS)，
+// 每编码一位，概率向实际出现的值移动 1 / 2^MOVE_BITS，
+// 上下文模型只需要为每个上下文分配一组概率，编码和解码使用相同的更新规则
+public class RangeEncoder {
+
+	public static final int PROB_BITS = 11;
+
+	public static final int PROB_INIT = 1 << (PROB_BITS - 1);
+
+	public static final int MOVE_BITS = 4;
+
+	private static final int TOP = 1 << 24;
+
+	private CompressResult out;
+
+	private long low;
+
+	private int range = -1; // 无符号 32 位
+
+	private int cache;
+
+	private long cacheSize = 1;
+
+	// 数据追加到 out 的末尾
+	public RangeEncoder(CompressResult out) {
+		this.out = out;
+	}
+
+	// 编码一位，probs[i] 为这一位的概率，编码后更新
+	public void encodeBit(short[] probs, int i, int bit) {
+		int p = probs[i];
+		encode(p, bit);
+		probs[i] = (short) update(p, bit);
+	}
+
+	// 按概率 p 编码一位，不更新概率，概率保存在其他结构中时使用
+	public void encode(int p, int bit) {
+		int bound = (range >>> PROB_BITS) * p;
+		if (bit == 0) {
+			range = bound;
+		} else {
+			low += bound & 0xffffffffL;
+			range -= bound;
+		}
+		while ((range & 0xff000000) == 0) {
+			range <<= 8;
+			shiftLow();
+		}
+	}
+
+	// 编码或解码一位后的概率
+	public static int update(int p, int bit) {
+		return bit == 0 ? p + (((1 << PROB_BITS) - p) >>> MOVE_BITS) : p - (p >>> MOVE_BITS);
+	}
+
+	// 输出 low 的最高字节，进位时修正之前缓存的字节
+	private void shiftLow() {
+		if (low < 0xff000000L || low > 0xffffffffL) {
+			int carry = (int) (low >>> 32);
+			int temp = cache;
+			do {
+				out.write((temp + carry) & 0xff);
+				temp = 0xff;
+			} while (--cacheSize != 0);
+			cache = (int) ((low >>> 24) & 0xff);
+		}
+		cacheSize++;
+		low = (low & (TOP - 1)) << 8;
+	}
+
+	// 输出剩余的数据
+	public void flush() {
+		for (int i = 0; i < 5; i++)
+			shiftLow();
+	}
+
+}
@@ -2,25 +2,13 @@ package algorithm;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import pojo.SFNode;
 import pojo.SFCode;
@@ -29,7 +17,13 @@ import pojo.SFCodes;
 
 public class ShannonFano extends Algorithm {
 
-	public SFCodes getSFCodes(Map<Byte, Integer> counts) {
+	private int threadNum = Runtime.getRuntime().availableProcessors();
+
+	public void setThreadNum(int threadNum) {
+		this.threadNum = threadNum;
+	}
+
+	public SFCodes getSFCodes(long[] counts) {
 
 		// 排序，排序可以加快树的构建
 		List<Byte> list = sortByCounts(counts);
@@ -45,6 +39,15 @@ public class ShannonFano extends Algorithm {
 		// 构建编码表
 		SFCode[] table = buildSFCode(trie);
 
+		// 码长过长时，缩小频率使分布变得平坦，再重新生成
+		if (maxLen(table) > CanonicalCode.MAX_LEN) {
+			long[] flatCounts = new long[256];
+			for (int c = 0; c < 256; c++)
+				if (counts[c] > 0)
+					flatCounts[c] = counts[c] / 2 + 1;
+			return getSFCodes(flatCounts);
+		}
+
 		SFCodes SFCodes = new SFCodes();
 		SFCodes.SFCodeTable = table;
 		SFCodes.SFCodeTrie = trie;
@@ -52,19 +55,20 @@ public class ShannonFano extends Algorithm {
 		return SFCodes;
 	}
 
-	private static List<Byte> sortByCounts(Map<Byte, Integer> counts) {
-
-		Set<Byte> countsKeys = counts.keySet();
+	private static List<Byte> sortByCounts(long[] counts) {
 
-		List<Byte> list = new ArrayList<Byte>(countsKeys);
+		List<Byte> list = new ArrayList<Byte>();
+		for (int c = 0; c < 256; c++)
+			if (counts[c] > 0)
+				list.add((byte) c);
 
 		// 按照字符出现次数，对字符进行从大到小的排序
-		Collections.sort(list, (o1, o2) -> -counts.get(o1).compareTo(counts.get(o2)));
+		Collections.sort(list, (o1, o2) -> Long.compare(counts[o2 & 0xff], counts[o1 & 0xff]));
 
 		return list;
 	}
 
-	private static void genTrie(SFNode SFNode, Map<Byte, Integer> counts) {
+	private static void genTrie(SFNode SFNode, long[] counts) {
 		
 		List<Byte> list = SFNode.getBytes();
 
@@ -73,18 +77,18 @@ public class ShannonFano extends Algorithm {
 			return;
 
 		// 计算总频率
-		int fullSum = 0;
+		long fullSum = 0;
 		for (byte b : list)
-			fullSum += counts.get(b);
+			fullSum += counts[b & 0xff];
 
 		float bestdiff = 5;
 		int i = 0;
-		int sum = 0;
+		long sum = 0;
 		// 左子结点中字符的总频率和尽可能接近左子结点中字符的总频率
 		while (i < list.size()) {
 			float prediff = bestdiff;
 			// 计算 i 之前的所有数的和
-			sum += counts.get(list.get(i)); 
+			sum += counts[list.get(i) & 0xff]; 
 			// 计算 和 与 0.5 的差的绝对值，因为和要接近总和的一半
 			bestdiff = Math.abs((float) sum / fullSum - 0.5F); 
 			// 越接近中间值，绝对值就会越小，当绝对值开始变大时，说明刚好经过了中间值
@@ -104,59 +108,62 @@ public class ShannonFano extends Algorithm {
 		genTrie(SFNode.getRight(), counts);
 	}
 
+	// 由树得到每个字符的码长，再按码长生成范式编码，
+	// 范式编码和原编码的码长相同，所以压缩率不变
 	private SFCode[] buildSFCode(SFNode trie) {
-		SFCode[] table = new SFCode[128];  // 存储 128 个 asc 码的编码
-		buildSFCode(table, trie, 0, 0);
+		int[] lens = new int[256];
+		buildLens(lens, trie, 0);
+
+		CanonicalCode canonicalCode = new CanonicalCode(lens);
+
+		SFCode[] table = new SFCode[256];  // 存储 256 个字节的编码
+		for (int c = 0; c < 256; c++) {
+			if (lens[c] > 0)
+				table[c] = new SFCode(canonicalCode.getCode(c), lens[c]);
+		}
 
 		return table;
 	}
 
-	private void buildSFCode(SFCode[] table, SFNode SFNode, int SFCode, int len) {
+	private void buildLens(int[] lens, SFNode SFNode, int len) {
 		if (SFNode.isLeaf()) {
-			table[SFNode.getBytes().get(0)] = new SFCode(SFCode, len);
+			// 只有一种字符时，树只有根节点，也需要 1 位编码
+			lens[SFNode.getBytes().get(0) & 0xff] = Math.max(len, 1);
 			return;
 		}
 
-		// 左子结点 0，右子结点 1
-		buildSFCode(table, SFNode.getLeft(), SFCode << 1, len + 1);
-		buildSFCode(table, SFNode.getRight(), (SFCode << 1) | 1, len + 1);
+		buildLens(lens, SFNode.getLeft(), len + 1);
+		buildLens(lens, SFNode.getRight(), len + 1);
 	}
 
-	private Map<Byte, Integer> buildCounts(String filepath) throws IOException {
-
-		InputStream is = new FileInputStream(filepath);
-		BufferedInputStream in = new BufferedInputStream(is);
-
-		byte[] bytes = new byte[1024 * 1024];
-		long byteNum = is.available();
-		long index = 0;
-		HashMap<Byte, Integer> counts = new HashMap<>();
-
-		out: while (true) {
-			in.read(bytes);
-
-			for (int i = 0; i < bytes.length; i++) {
-				int f = counts.getOrDefault(bytes[i], 0);
-				counts.put(bytes[i], f + 1);
-				index++;
-				if (index == byteNum) {
-					break out;
-				}
-			}
-		}
+	private static int maxLen(SFCode[] table) {
+		int max = 0;
+		for (SFCode code : table)
+			if (code != null)
+				max = Math.max(max, code.len);
+		return max;
+	}
 
-		in.close();
+	// 由编码表得到码长表
+	private static CanonicalCode toCanonicalCode(SFCode[] table) {
+		int[] lens = new int[256];
+		for (int c = 0; c < 256; c++)
+			if (table[c] != null)
+				lens[c] = table[c].len;
+		return new CanonicalCode(lens);
+	}
 
-		return counts;
+	private long[] buildCounts(String filepath) throws IOException {
+		return Histogram.countFile(filepath);
 	}
 
 	public void compress(String filepath) throws IOException {
 
-		Map<Byte, Integer> counts = buildCounts(filepath);
+		long[] counts = buildCounts(filepath);
 		SFCodes SFCodes = getSFCodes(counts);
 
 		SFCode[] table = SFCodes.SFCodeTable;
-		SFNode trie = SFCodes.SFCodeTrie;
+		CanonicalCode canonicalCode = toCanonicalCode(table);
 
 		// 获取压缩后的文件名
 		String compressFilename = "";
@@ -168,72 +175,16 @@ public class ShannonFano extends Algorithm {
 
 		BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(compressFilename));
 
-		// 将树序列化到 objBytes 中
-		ByteArrayOutputStream bo = new ByteArrayOutputStream();
-		ObjectOutputStream oos = new ObjectOutputStream(bo);
-		oos.writeObject(trie);
-		byte[] objBytes = bo.toByteArray();
-		int objLen = objBytes.length;
-
-		// 将序列化的树的数据长度和数据写入文件，write每次只写低 8 位
-		for (int i = 3; i >= 0; i--) {
-			out.write((int) (objLen >> (8 * i)));
-		}
-		out.write(objBytes);
-
-		// 给压缩后的 bit 长度 占位
-		for (int i = 0; i < 8; i++) {
-			out.write(0);
-		}
+		// 写入码长表
+		canonicalCode.write(out);
 
-		// 压缩
-		InputStream is = new FileInputStream(filepath);
-		BufferedInputStream in = new BufferedInputStream(is);
-
-		byte[] bytes = new byte[1024 * 1024];
-		long byteNum = is.available();
-		long index = 0;
-
-		SFCode SFCode;
-		int buffer = 0;
-		int len = 0;
-		long bitLen = 0;
-
-		out: while (true) {
-			in.read(bytes);
-			for (int i = 0; i < bytes.length; i++) {
-				SFCode = table[bytes[i]];
-				for (int j = SFCode.len - 1; j >= 0; j--) {
-					buffer <<= 1;
-					if ((SFCode.SFCode & (1 << j)) != 0) {
-						buffer |= 1;
-					}
-					len++;
-					bitLen++;
-					if (len == 8) {
-						out.write(buffer);
-						buffer = 0;
-						len = 0;
-					}
-				}
-				index++;
-				if (index == byteNum) {
-					if (len != 0)
-						out.write(buffer << 8 - len);
-					break out;
-				}
-			}
-		}
+		// 分块并行压缩，每块记录原始长度和编码后的 bit 数
+		MappedInput in = new MappedInput(filepath);
+		ParallelCoder.encode(canonicalCode, in, out, threadNum);
 
 		in.close();
-		out.flush();
 		out.close();
 
-		RandomAccessFile rf = new RandomAccessFile(compressFilename, "rw");
-		rf.seek(4 + objLen);
-		rf.writeLong(bitLen);
-		rf.close();
-
 	}
 
 	private String getExpendFilename(String filepath) {
@@ -255,53 +206,13 @@ public class ShannonFano extends Algorithm {
 
 		BufferedInputStream in = new BufferedInputStream(new FileInputStream(filepath));
 
-		BufferedWriter out = new BufferedWriter(
-			new OutputStreamWriter(new FileOutputStream(getExpendFilename(filepath))));
-
-		// 读取树对象的长度
-		ByteBuffer buffer;
-		byte[] objLenNum = new byte[4];
-		in.read(objLenNum);
-		buffer = ByteBuffer.wrap(objLenNum, 0, 4);
-		int objLen = buffer.getInt();
-
-		// 读取树
-		byte[] objBytes = new byte[objLen];
-		in.read(objBytes);
-		SFNode root = (SFNode) deserialize(objBytes);
-
-		// 读取压缩数据的长度 bit 位数
-		byte[] dataSize = new byte[8];
-		in.read(dataSize);
-		buffer = ByteBuffer.wrap(dataSize, 0, 8);
-		long size = buffer.getLong();
-
-		// 解压缩
-		byte[] bytes = new byte[1024 * 1024];
-		SFNode x = root;
-
-		long n = 0;
-
-		out: while (true) {
-			in.read(bytes);
-			for (int i = 0; i < bytes.length; i++) {
-				for (int j = 7; j >= 0; j--) {
-					if ((bytes[i] & (1 << j)) != 0) {
-						x = x.getRight();
-					} else {
-						x = x.getLeft();
-					}
-					if (x.isLeaf()) {
-						out.write(x.getBytes().get(0));
-						x = root;
-					}
-					n++;
-					if (n == size) {
-						break out;
-					}
-				}
-			}
-		}
+		ChannelOutput out = new ChannelOutput(getExpendFilename(filepath));
+
+		// 读取码长表，重建范式编码
+		CanonicalCode canonicalCode = CanonicalCode.read(in);
+
+		// 分块并行解压
+		ParallelCoder.decode(canonicalCode, in, out, threadNum);
 
 		in.close();
 
@@ -310,20 +221,4 @@ public class ShannonFano extends Algorithm {
 
 	}
 
-	public static Object deserialize(byte[] bytes) {
-		Object object = null;
-		try {
-			ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-			ObjectInputStream ois = new ObjectInputStream(bis);
-			object = ois.readObject();
-			ois.close();
-			bis.close();
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		} catch (ClassNotFoundException ex) {
-			ex.printStackTrace();
-		}
-		return object;
-	}
-
 }
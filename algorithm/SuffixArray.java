@@ -0,0 +1,143 @@
+package algorithm;
+
+import java.util.Arrays;
+
+// 后缀数组的线性时间构造（SA-IS，Nong、Zhang、Chan 2009）
+// 后缀按照 S 型（比后一个后缀小）和 L 型（比后一个后缀大）分类，
+// 左边是 L 型的 S 型位置称为 LMS，先把 LMS 后缀放到各个字符的桶的末尾，
+// 由它们诱导排序出所有 L 型后缀，再诱导排序出所有 S 型后缀，此时 LMS 子串已经有序，
+// 给 LMS 子串命名后得到一个长度不超过一半的新字符串，名字不唯一时递归求它的后缀数组，
+// 最后按 LMS 后缀的正确顺序再做一次诱导排序
+// 只使用 int 数组，没有比较器，每一层的时间和空间都与长度成正比
+public class SuffixArray {
+
+	// bytes[off, off + len) 加上一个比所有字节都小的结束符的后缀数组，长度为 len + 1，第一个元素总是 len
+	public static int[] build(byte[] bytes, int off, int len) {
+		int n = len + 1;
+		int[] text = new int[n];
+		for (int i = 0; i < len; i++)
+			text[i] = (bytes[off + i] & 0xff) + 1;
+		text[len] = 0;
+
+		int[] sa = new int[n];
+		sais(text, sa, n, 257);
+		return sa;
+	}
+
+	private static boolean isLMS(boolean[] stype, int i) {
+		return i > 0 && stype[i] && !stype[i - 1];
+	}
+
+	// 每个字符的桶的起始位置（end 为 false）或结束位置（end 为 true）
+	private static void getBuckets(int[] text, int[] bucket, int n, int k, boolean end) {
+		Arrays.fill(bucket, 0, k, 0);
+		for (int i = 0; i < n; i++)
+			bucket[text[i]]++;
+		int sum = 0;
+		for (int c = 0; c < k; c++) {
+			sum += bucket[c];
+			bucket[c] = end ? sum : sum - bucket[c];
+		}
+	}
+
+	// 从左向右扫描，已排好序的后缀的前一个位置是 L 型时，放到它的桶的前面
+	private static void induceL(int[] text, int[] sa, boolean[] stype, int[] bucket, int n, int k) {
+		getBuckets(text, bucket, n, k, false);
+		for (int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if (j >= 0 && !stype[j])
+				sa[bucket[text[j]]++] = j;
+		}
+	}
+
+	// 从右向左扫描，已排好序的后缀的前一个位置是 S 型时，放到它的桶的后面
+	private static void induceS(int[] text, int[] sa, boolean[] stype, int[] bucket, int n, int k) {
+		getBuckets(text, bucket, n, k, true);
+		for (int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if (j >= 0 && stype[j])
+				sa[--bucket[text[j]]] = j;
+		}
+	}
+
+	// text 的最后一个字符是唯一的最小字符 0，其他字符在 [1, k) 中
+	private static void sais(int[] text, int[] sa, int n, int k) {
+		if (n == 1) {
+			sa[0] = 0;
+			return;
+		}
+
+		boolean[] stype = new boolean[n];
+		stype[n - 1] = true;
+		for (int i = n - 2; i >= 0; i--)
+			stype[i] = text[i] < text[i + 1] || (text[i] == text[i + 1] && stype[i + 1]);
+
+		// 第一次诱导排序，得到有序的 LMS 子串
+		int[] bucket = new int[k];
+		getBuckets(text, bucket, n, k, true);
+		Arrays.fill(sa, -1);
+		for (int i = 1; i < n; i++)
+			if (isLMS(stype, i))
+				sa[--bucket[text[i]]] = i;
+		induceL(text, sa, stype, bucket, n, k);
+		induceS(text, sa, stype, bucket, n, k);
+
+		// 有序的 LMS 子串移到 sa 的前面
+		int n1 = 0;
+		for (int i = 0; i < n; i++)
+			if (isLMS(stype, sa[i]))
+				sa[n1++] = sa[i];
+
+		// 相邻的 LMS 子串相同时名字相同，名字暂时放在 sa[n1 + pos / 2]，LMS 位置至少相隔 2，不会冲突
+		Arrays.fill(sa, n1, n, -1);
+		int name = 0;
+		int prev = -1;
+		for (int i = 0; i < n1; i++) {
+			int pos = sa[i];
+			boolean diff = false;
+			for (int d = 0; d < n; d++) {
+				if (prev == -1 || text[pos + d] != text[prev + d] || stype[pos + d] != stype[prev + d]) {
+					diff = true;
+					break;
+				}
+				if (d > 0 && (isLMS(stype, pos + d) || isLMS(stype, prev + d)))
+					break;
+			}
+			if (diff) {
+				name++;
+				prev = pos;
+			}
+			sa[n1 + pos / 2] = name - 1;
+		}
+
+		// 按位置顺序得到新字符串，最后一个是结束符所在的 LMS 子串，名字为 0
+		int[] text1 = new int[n1];
+		for (int i = n1, j = 0; i < n; i++)
+			if (sa[i] >= 0)
+				text1[j++] = sa[i];
+
+		int[] sa1 = new int[n1];
+		if (name < n1) {
+			sais(text1, sa1, n1, name);
+		} else {
+			for (int i = 0; i < n1; i++)
+				sa1[text1[i]] = i;
+		}
+
+		// text1 改为保存每个 LMS 后缀的位置，sa1 转换为 LMS 后缀的正确顺序
+		for (int i = 1, j = 0; i < n; i++)
+			if (isLMS(stype, i))
+				text1[j++] = i;
+		for (int i = 0; i < n1; i++)
+			sa1[i] = text1[sa1[i]];
+
+		// 有序的 LMS 后缀从后向前放到各自的桶的末尾，再诱导排序
+		getBuckets(text, bucket, n, k, true);
+		Arrays.fill(sa, -1);
+		for (int i = n1 - 1; i >= 0; i--)
+			sa[--bucket[text[sa1[i]]]] = sa1[i];
+		induceL(text, sa, stype, bucket, n, k);
+		induceS(text, sa, stype, bucket, n, k);
+	}
+
+}
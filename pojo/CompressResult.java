@@ -1,29 +1,67 @@
 package pojo;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+// 压缩结果：自动扩容的字节数组和其中有效数据的 bit 数
+// 同一个对象可以在每次压缩前 clear 后重复使用，避免每条记录都重新分配内存
 public class CompressResult {
-    private ArrayList<Byte> bytes;
+	private byte[] bytes;
+	private int byteLen;
 	private int bitLen;
 
-	public CompressResult (ArrayList<Byte> bytes, int bitLen){
-		this.bytes = bytes;
-		this.bitLen = bitLen;
+	public CompressResult() {
+		this(1024);
+	}
+
+	public CompressResult(int capacity) {
+		this.bytes = new byte[Math.max(capacity, 16)];
+	}
+
+	public void clear() {
+		byteLen = 0;
+		bitLen = 0;
+	}
+
+	// 保证还能再写入 n 个字节，扩容时保留已有的数据
+	public void ensureCapacity(int n) {
+		if (byteLen + n > bytes.length)
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, byteLen + n));
+	}
+
+	public void write(int b) {
+		ensureCapacity(1);
+		bytes[byteLen++] = (byte) b;
+		bitLen = byteLen * 8;
+	}
+
+	public void write(byte[] b, int off, int len) {
+		ensureCapacity(len);
+		System.arraycopy(b, off, bytes, byteLen, len);
+		byteLen += len;
+		bitLen = byteLen * 8;
 	}
 
 	public void setBitLen(int bitLen) {
 		this.bitLen = bitLen;
 	}
 
-	public void setBytes(ArrayList<Byte> bytes) {
-		this.bytes = bytes;
+	public void setByteLen(int byteLen) {
+		this.byteLen = byteLen;
 	}
 
 	public int getBitLen() {
 		return bitLen;
 	}
 
-	public ArrayList<Byte> getBytes() {
+	public int getByteLen() {
+		return byteLen;
+	}
+
+	public byte[] getBytes() {
 		return bytes;
 	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(bytes, byteLen);
+	}
 }
@@ -0,0 +1,50 @@
+package pojo;
+
+// 解析后的一块 FASTQ 数据：块数据和其中每一行的起止位置，
+// 所有行都指向同一个字节数组，解析时不为每行创建对象
+public class FastqBlock {
+	private byte[] bytes;
+	private int lineNum;
+	private int[] starts;
+	private int[] ends;
+
+	public FastqBlock(byte[] bytes, int lineNum, int[] starts, int[] ends) {
+		this.bytes = bytes;
+		this.lineNum = lineNum;
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public int getLineNum() {
+		return lineNum;
+	}
+
+	// read 数，最后一个 read 可能不完整
+	public int getReadNum() {
+		return (lineNum + 3) / 4;
+	}
+
+	// 第 index 行的起始位置，最后一个 read 不完整时缺少的行为空
+	public int start(int index) {
+		return index < lineNum ? starts[index] : 0;
+	}
+
+	public int end(int index) {
+		return index < lineNum ? ends[index] : 0;
+	}
+
+	public int length(int index) {
+		return end(index) - start(index);
+	}
+
+	// 让 record 指向第 r 个 read
+	public FastqRecord getRecord(int r, FastqRecord record) {
+		for (int line = 0; line < 4; line++)
+			record.set(bytes, line, start(4 * r + line), end(4 * r + line));
+		return record;
+	}
+}
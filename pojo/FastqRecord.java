@@ -0,0 +1,33 @@
+package pojo;
+
+// 一个 read 的视图，不复制数据，只记录 4 行在块数据中的位置
+// 同一个对象可以通过 FastqBlock.getRecord 反复指向不同的 read
+public class FastqRecord {
+	private byte[] bytes;
+	private int[] starts = new int[4];
+	private int[] ends = new int[4];
+
+	public void set(byte[] bytes, int line, int start, int end) {
+		this.bytes = bytes;
+		starts[line] = start;
+		ends[line] = end;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	// 第 line 行的起始位置
+	public int start(int line) {
+		return starts[line];
+	}
+
+	// 第 line 行的结束位置，不包括换行符
+	public int end(int line) {
+		return ends[line];
+	}
+
+	public int length(int line) {
+		return ends[line] - starts[line];
+	}
+}
@@ -1,11 +0,0 @@
-package pojo;
-
-public class HuffmanCode {
-    public int code;
-	public int len;
-
-	public HuffmanCode(int code, int len) {
-		this.code = code;
-		this.len = len;
-	}
-}
@@ -7,10 +7,10 @@ public class HuffmanNode implements Comparable<HuffmanNode>, Serializable {
 	private static final long serialVersionUID = -299482035708790407L;
 
 	private char c;
-	private int freq;
+	private long freq;
 	private final HuffmanNode left, right;
 
-	public HuffmanNode(char c, int freq, HuffmanNode left, HuffmanNode right) {
+	public HuffmanNode(char c, long freq, HuffmanNode left, HuffmanNode right) {
 		this.c = c;
 		this.freq = freq;
 		this.left = left;
@@ -23,10 +23,10 @@ public class HuffmanNode implements Comparable<HuffmanNode>, Serializable {
 
 	@Override
 	public int compareTo(HuffmanNode that) {
-		return this.freq - that.freq;
+		return Long.compare(this.freq, that.freq);
 	}
 
-	public int getFreq() {
+	public long getFreq() {
 		return freq;
 	}
 
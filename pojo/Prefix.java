@@ -1,11 +0,0 @@
-package pojo;
-
-public class Prefix {
-	public String str;
-	public int code;
-
-	public Prefix(String str, int code) {
-		this.str = str;
-		this.code = code;
-	}
-}
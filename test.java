@@ -1,15 +1,32 @@
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import algorithm.Algorithm;
 import algorithm.BWT;
+import algorithm.BWTCompress;
+import algorithm.BasePacker;
+import algorithm.BitWriter;
+import algorithm.CanonicalCode;
 import algorithm.Huffman;
 import algorithm.LZW;
+import algorithm.NameCoder;
+import algorithm.RANS;
 import algorithm.RLE;
+import algorithm.RangeDecoder;
+import algorithm.RangeEncoder;
 import algorithm.ShannonFano;
+import pojo.CompressResult;
 
 public class test {
 
@@ -49,6 +66,12 @@ public class test {
 			case "lzw":
 				algorithm = new LZW();
 				break;
+			case "rans":
+				algorithm = new RANS();
+				break;
+			case "bwtz":
+				algorithm = new BWTCompress();
+				break;
 			case "mix":
 				algorithm = new MixCompress();
 		}
@@ -177,16 +200,147 @@ public class test {
 
 	}
 
+	// 比较逐位写入和 BitWriter 整体写入编码的速度，编码使用文件的范式哈夫曼编码
+	public static void bitWriterTest(String filepath) throws IOException {
+
+		byte[] bytes = Files.readAllBytes(Paths.get(filepath));
+
+		Huffman huffman = new Huffman();
+		huffman.countText(new String(bytes, StandardCharsets.ISO_8859_1));
+		huffman.buildTrie();
+		huffman.buildHuffmanCode();
+		CanonicalCode canonicalCode = huffman.getCanonicalCode();
+
+		long t;
+
+		// 原来的写法：每个 bit 移位一次，每个字节调用一次 write
+		t = System.currentTimeMillis();
+		BufferedOutputStream out = new BufferedOutputStream(OutputStream.nullOutputStream());
+		int buffer = 0;
+		int len = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			int code = canonicalCode.getCode(bytes[i] & 0xff);
+			for (int j = canonicalCode.getLen(bytes[i] & 0xff) - 1; j >= 0; j--) {
+				buffer <<= 1;
+				if ((code & (1 << j)) != 0)
+					buffer |= 1;
+				len++;
+				if (len == 8) {
+					out.write(buffer);
+					buffer = 0;
+					len = 0;
+				}
+			}
+		}
+		out.flush();
+		long bitTime = System.currentTimeMillis() - t;
+
+		// BitWriter：整个编码写入 64 位累加器，一次写入 8 个字节
+		t = System.currentTimeMillis();
+		BitWriter writer = new BitWriter(OutputStream.nullOutputStream());
+		for (int i = 0; i < bytes.length; i++)
+			writer.write(canonicalCode.getCode(bytes[i] & 0xff), canonicalCode.getLen(bytes[i] & 0xff));
+		writer.flush();
+		long writerTime = System.currentTimeMillis() - t;
+
+		double mb = bytes.length / 1024.0 / 1024.0;
+		System.out.println("bit loop: " + bitTime + " ms, " + mb * 1000 / Math.max(bitTime, 1) + " MB/s");
+		System.out.println("BitWriter: " + writerTime + " ms, " + mb * 1000 / Math.max(writerTime, 1) + " MB/s");
+	}
+
+	// 名称编码的往返测试，名称中含有 0 字节和任意字节时也要完整还原
+	public static void nameCoderTest() throws IOException {
+		byte[][] names = new byte[][] {
+				"@SRR001 1/1".getBytes(StandardCharsets.ISO_8859_1),
+				"@SRR001 2/1".getBytes(StandardCharsets.ISO_8859_1),
+				"@SRR\0x01\0 3/1".getBytes(StandardCharsets.ISO_8859_1),
+				new byte[] { 0, 0, ':', 0, (byte) 0xff, '_', 0 },
+				new byte[0],
+				"@SRR001 4/1".getBytes(StandardCharsets.ISO_8859_1) };
+
+		CompressResult data = new CompressResult();
+		RangeEncoder encoder = new RangeEncoder(data);
+		NameCoder coder = new NameCoder();
+		for (byte[] name : names)
+			coder.encode(encoder, name, 0, name.length);
+		encoder.flush();
+
+		RangeDecoder decoder = new RangeDecoder(data.getBytes(), 0, data.getByteLen());
+		coder = new NameCoder();
+		CompressResult out = new CompressResult();
+		for (byte[] name : names) {
+			int start = out.getByteLen();
+			int len = coder.decode(decoder, out);
+			if (!Arrays.equals(name, 0, name.length, out.getBytes(), start, start + len))
+				throw new IOException("名称还原错误");
+		}
+		System.out.println("name coder: ok");
+	}
+
+	// 比较逐个碱基写入和 BasePacker 批量打包、解包的速度
+	public static void basePackTest(String filepath) throws IOException {
+
+		// 只取碱基行
+		CompressResult seqs = new CompressResult();
+		try (BufferedReader reader = new BufferedReader(new FileReader(filepath))) {
+			String line;
+			for (int i = 0; (line = reader.readLine()) != null; i++) {
+				if (i % 4 == 1) {
+					byte[] seq = line.getBytes(StandardCharsets.ISO_8859_1);
+					seqs.write(seq, 0, seq.length);
+				}
+			}
+		}
+		byte[] bytes = seqs.toByteArray();
+
+		long t;
+
+		// 原来的写法：每个碱基比较 3 次，每次写入 2 位
+		t = System.currentTimeMillis();
+		BitWriter writer = new BitWriter(new CompressResult(bytes.length / 4 + 1));
+		for (int i = 0; i < bytes.length; i++) {
+			byte c = bytes[i];
+			writer.write(c == 'T' ? 1 : c == 'G' ? 2 : c == 'C' ? 3 : 0, 2);
+		}
+		writer.flush();
+		long bitTime = System.currentTimeMillis() - t;
+
+		// BasePacker：一次打包 8 个碱基
+		t = System.currentTimeMillis();
+		byte[] packed = new byte[(bytes.length + 3) / 4];
+		BasePacker.pack(bytes, 0, bytes.length, packed, 0);
+		long packTime = System.currentTimeMillis() - t;
+
+		t = System.currentTimeMillis();
+		byte[] unpacked = new byte[bytes.length];
+		BasePacker.unpack(packed, 0, unpacked, 0, unpacked.length);
+		long unpackTime = System.currentTimeMillis() - t;
+
+		double mb = bytes.length / 1024.0 / 1024.0;
+		System.out.println("base bit loop: " + bitTime + " ms, " + mb * 1000 / Math.max(bitTime, 1) + " MB/s");
+		System.out.println("pack: " + packTime + " ms, " + mb * 1000 / Math.max(packTime, 1) + " MB/s");
+		System.out.println("unpack: " + unpackTime + " ms, " + mb * 1000 / Math.max(unpackTime, 1) + " MB/s");
+	}
+
 	// rm *.lzw *.huffman *.sf *.rle *.bwt *.mix test[0-9][0-9].fastq
 	// dataset[1-9].fastq
 	public static void main(String[] args) throws IOException {
 		// BWTtest("test_data/dataset.bwt", "1");
 		// BWTtest("test_data/test2.bwt", "ibwt");
 
-		String[] algos = new String[] {"huffman", "sf", "lzw", "rle", "mix"};
-
 		String file = "test_data/ecoli_filtered";
 
+		// java test bench：只比较写入方式的速度
+		if (args.length > 0 && args[0].equals("bench")) {
+			bitWriterTest(file + ".fastq");
+			basePackTest(file + ".fastq");
+			return;
+		}
+
+		nameCoderTest();
+
+		String[] algos = new String[] {"huffman", "sf", "lzw", "rle", "rans", "bwtz", "mix"};
+
 		for (String algo : algos) {
 			System.out.println("----------------------");
 			compressTest(algo, file);